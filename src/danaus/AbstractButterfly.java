@@ -12,9 +12,9 @@ public abstract class AbstractButterfly extends Entity {
     private static final String BUTTERFLY_NAME= "butterfly";
 
     /** The power it costs for a butterfly to get state. */
-    static final int REFRESH_STATE_POWER_COST= 5;
+    public static final int REFRESH_STATE_POWER_COST= 5;
     /** The power it costs when a butterfly inaccurately collects a flower. */
-    static final int WRONG_COLLECT_POWER_COST= 50;
+    public static final int WRONG_COLLECT_POWER_COST= 50;
 
     /** The power of a butterfly. */
     private Power power;
@@ -22,6 +22,10 @@ public abstract class AbstractButterfly extends Entity {
     /** The map the butterfly is on (null if it is not on a map). */
     private Map map;
 
+    /** The butterfly's own statistics. The park keeps the totals of every
+     * butterfly on the map; this keeps only the share of this butterfly. */
+    ParkState stats;
+
     /** A tile state (not necessarily the state of the tile the butterfly is 
      * currently on).
      * @see danaus.AbstractButterfly#refreshState() */
@@ -137,19 +141,34 @@ public abstract class AbstractButterfly extends Entity {
 	 */
 	public abstract Location flowerLocation(long flowerId);
 	
-    /** @see danaus.Map#fly(Direction, Speed). */
+    /** @see danaus.Map#fly(AbstractButterfly, Direction, Speed). */
     protected void fly(Direction heading, Speed s) {
-        map.fly(heading, s);
+        long start = Metrics.start();
+        try {
+            map.fly(this, heading, s);
+        } finally {
+            Metrics.stop(Metrics.Api.FLY, start);
+        }
     }
 
-    /** @see danaus.Map#flySafe(Direction, Speed). */
+    /** @see danaus.Map#flySafe(AbstractButterfly, Direction, Speed). */
     protected void flySafe(Direction heading, Speed s) {
-        map.flySafe(heading, s);
+        long start = Metrics.start();
+        try {
+            map.flySafe(this, heading, s);
+        } finally {
+            Metrics.stop(Metrics.Api.FLY_SAFE, start);
+        }
     }
 
-    /** @see danaus.Map#land(). */
+    /** @see danaus.Map#land(AbstractButterfly). */
     protected void land() { 
-        map.land();
+        long start = Metrics.start();
+        try {
+            map.land(this);
+        } finally {
+            Metrics.stop(Metrics.Api.LAND, start);
+        }
     }
 	
 	/**
@@ -162,21 +181,33 @@ public abstract class AbstractButterfly extends Entity {
 	 * @throws PrematureCollectionException
 	 */
 	protected void collect(Flower flower) {
-		map.collect(flower);
+		long start = Metrics.start();
+		try {
+			map.collect(this, flower);
+		} finally {
+			Metrics.stop(Metrics.Api.COLLECT, start);
+		}
 	}
 	
-	/** @see danaus.Map#refreshState(). */
+	/** @see danaus.Map#refreshState(AbstractButterfly). */
     protected void refreshState() {
-        map.refreshState();
+        long start = Metrics.start();
+        try {
+            map.refreshState(this);
+        } finally {
+            Metrics.stop(Metrics.Api.REFRESH_STATE, start);
+        }
     }
 
     /** Add p to the butterfly's power. */
     void addPower(int p) {		
         if (p >= 0) {
-            map.park.state.powerConsumed += p;
+            map.park.state.powerConsumed.add(p);
+            stats.powerConsumed.add(p);
         }
         else {
-            map.park.state.powerSpent += p;
+            map.park.state.powerSpent.add(p);
+            stats.powerSpent.add(p);
         }
 
         power.addPower(p);
@@ -185,10 +216,12 @@ public abstract class AbstractButterfly extends Entity {
     /** Subtract p from the butterfly's power. */
     void subtractPower(int p) {
         if (p >= 0) {
-            map.park.state.powerSpent += p;
+            map.park.state.powerSpent.add(p);
+            stats.powerSpent.add(p);
         }
         else {
-            map.park.state.powerConsumed += p;
+            map.park.state.powerConsumed.add(p);
+            stats.powerConsumed.add(p);
         }
 
         power.subtractPower(p);
@@ -0,0 +1,361 @@
+package danaus;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/* *************************************************************************//**
+ * An instance is a micro-benchmark harness for the hot paths of Danaus' engine
+ * and of the student's butterfly. Each benchmark is warmed up for a number of
+ * iterations, so that the JIT has compiled the code under test, and then
+ * measured for a number of iterations. The average time per operation is
+ * reported along with its standard deviation across iterations.
+ * <br>
+ * Allocation is profiled as well. The bytes allocated by the benchmarking
+ * thread during each measured iteration are read from the JVM's
+ * ThreadMXBean and reported per operation, much like JMH's "-prof gc".
+ * <br>
+ * Benchmarks are run from the command line:
+ *
+ *     java danaus.Benchmark [-w warmups] [-i iterations] [-t millis]
+ *                           [-o file] [benchmark]...
+ *
+ * If benchmarks are named, only those whose names contain one of the given
+ * names are run. Baseline results are kept in doc/bench.
+ * ****************************************************************************/
+public class Benchmark {
+	/** The number of warmup iterations of every benchmark. */
+	private static int WARMUP_ITERATIONS = 3;
+	/** The number of measured iterations of every benchmark. */
+	private static int MEASUREMENT_ITERATIONS = 5;
+	/** The minimum duration of an iteration, in milliseconds. */
+	private static int ITERATION_TIME = 1000;
+
+	/** The seed of every randomly generated map. */
+	private static final int SEED = 2110;
+	/** The seeds of the maps used to benchmark full simulations. */
+	private static final int[] SEED_CORPUS = {1, 2, 3, 5, 8, 13, 21, 34};
+	/** The side lengths of the square maps used to benchmark generation. */
+	private static final int[] MAP_SIZES = {40, 80, 160};
+	/** The map files used to benchmark parsing. */
+	private static final String[] MAP_FILES = {
+		"res/maps/small.xml", "res/maps/map8.xml", "res/maps/world.xml"
+	};
+
+	////////////////////////////////////////////////////////////////////////////
+	// Benchmark Cases
+	////////////////////////////////////////////////////////////////////////////
+	/* *********************************************************************//**
+	 * An instance is a single benchmark. A benchmark is set up before every
+	 * iteration and its operation is invoked repeatedly until the iteration
+	 * ends. Setup is never timed.
+	 * ************************************************************************/
+	private static abstract class Case {
+		/** The name of the benchmark. */
+		final String name;
+
+		Case(String name) {
+			this.name = name;
+		}
+
+		/** Prepares an iteration of the benchmark. */
+		void setup() throws Exception {}
+
+		/** The operation being benchmarked. */
+		abstract void op() throws Exception;
+
+		/** The number of operations in an iteration, or 0 if an iteration is
+		 * as many operations as fit in ITERATION_TIME. */
+		int batch() {
+			return 0;
+		}
+	}
+
+	/* *********************************************************************//**
+	 * Returns every benchmark.
+	 * ************************************************************************/
+	private static List<Case> cases() {
+		List<Case> cases = new ArrayList<Case>();
+
+		/* Random map generation at several sizes. */
+		for (final int size : MAP_SIZES) {
+			cases.add(new Case("map.generate." + size + "x" + size) {
+				void op() {
+					new Simulator(size, size);
+				}
+			});
+		}
+
+		/* Parsing map files. */
+		for (final String filename : MAP_FILES) {
+			final String path = filename;
+			String name = new File(filename).getName().replace(".xml", "");
+			cases.add(new Case("map.parse." + name) {
+				void op() throws Exception {
+					new Simulator(path);
+				}
+			});
+		}
+
+		/* Spreading aromas and wind over a generated map. */
+		cases.add(new Case("map.spreadAromas") {
+			Map map;
+			void setup() {
+				map = new Simulator().park.map;
+			}
+			void op() {
+				map.respreadAromas();
+			}
+		});
+		cases.add(new Case("map.spreadWind") {
+			Map map;
+			void setup() {
+				map = new Simulator().park.map;
+			}
+			void op() {
+				map.respreadWind();
+			}
+		});
+
+		/* The butterfly's API. */
+		cases.add(new Case("butterfly.refreshState") {
+			Map map;
+			void setup() {
+				map = new Simulator().park.map;
+			}
+			void op() {
+				map.refreshState(map.butterfly);
+			}
+		});
+		cases.add(new Case("butterfly.flySafe") {
+			Map map;
+			int move;
+			void setup() {
+				map = new Simulator().park.map;
+			}
+			void op() {
+				map.flySafe(map.butterfly, Direction.values()[move++ & 7],
+						Speed.FAST);
+			}
+		});
+
+		/* Grading the states a butterfly learned. */
+		cases.add(new Case("park.gradeStates") {
+			Park park;
+			TileState[][] states;
+			void setup() {
+				park = new Simulator().park;
+				Tile[][] tiles = park.map.tiles;
+				states = new TileState[tiles.length][tiles[0].length];
+				for (int row = 0; row < tiles.length; row++) {
+					for (int col = 0; col < tiles[0].length; col++) {
+						states[row][col] = new TileState(tiles[row][col].tileState);
+					}
+				}
+			}
+			void op() {
+				park.gradeStates(states);
+			}
+		});
+
+		/* Full simulations of the student's butterfly over a fixed corpus.
+		 * Every park is built during setup, so only learn() and run() are
+		 * timed. */
+		cases.add(new Case("butterfly.learnRun") {
+			Park[] parks;
+			int next;
+			void setup() {
+				parks = new Park[SEED_CORPUS.length];
+				for (int i = 0; i < SEED_CORPUS.length; i++) {
+					Simulator.SEED = SEED_CORPUS[i];
+					parks[i] = new Simulator().park;
+				}
+				Simulator.SEED = SEED;
+				next = 0;
+			}
+			void op() {
+				parks[next++].simulate();
+			}
+			int batch() {
+				return SEED_CORPUS.length;
+			}
+		});
+
+		return cases;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Measurement
+	////////////////////////////////////////////////////////////////////////////
+	/* *********************************************************************//**
+	 * The measurement of an iteration: its total time and allocation spent in
+	 * operations, and the number of operations.
+	 * ************************************************************************/
+	private static class Iteration {
+		long nanos;
+		long bytes;
+		long ops;
+	}
+
+	/* *********************************************************************//**
+	 * Runs a single iteration of benchmark c.
+	 * ************************************************************************/
+	private static Iteration iterate(Case c) throws Exception {
+		c.setup();
+
+		Iteration it = new Iteration();
+		long deadline = ITERATION_TIME * 1000000L;
+		int batch = c.batch();
+		long bytes = Common.thread_allocated_bytes();
+		long start = System.nanoTime();
+
+		/* Operations are timed in chunks, so the cost of reading the clock
+		 * does not dominate cheap operations. A chunk doubles the last one,
+		 * but never holds more operations than are expected to fit in the
+		 * time left, so an iteration overshoots its deadline by about one
+		 * operation rather than one chunk. */
+		int chunk = 1;
+		while (batch == 0 ? it.nanos < deadline : it.ops < batch) {
+			int n = batch == 0 ? chunk : 1;
+			long opStart = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				c.op();
+			}
+			it.nanos += System.nanoTime() - opStart;
+			it.ops += n;
+			long left = (deadline - it.nanos) * it.ops / Math.max(1, it.nanos);
+			chunk = (int) Math.max(1, Math.min(Math.min(chunk * 2L, left), 1 << 16));
+		}
+
+		it.bytes = Common.thread_allocated_bytes() - bytes;
+		if (batch != 0) {
+			it.nanos = Math.min(it.nanos, System.nanoTime() - start);
+		}
+		return it;
+	}
+
+	/* *********************************************************************//**
+	 * Warms up and measures benchmark c and returns a line of results.
+	 * ************************************************************************/
+	private static String measure(Case c) throws Exception {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iterate(c);
+		}
+
+		double[] nanosPerOp = new double[MEASUREMENT_ITERATIONS];
+		double totalBytes = 0;
+		long totalOps = 0;
+		for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+			Iteration it = iterate(c);
+			nanosPerOp[i] = it.nanos / (double) it.ops;
+			totalBytes += it.bytes;
+			totalOps += it.ops;
+		}
+
+		double mean = 0;
+		for (double n : nanosPerOp) {
+			mean += n;
+		}
+		mean /= nanosPerOp.length;
+		double variance = 0;
+		for (double n : nanosPerOp) {
+			variance += (n - mean) * (n - mean);
+		}
+		double stddev = nanosPerOp.length > 1 ?
+				Math.sqrt(variance / (nanosPerOp.length - 1)) : 0;
+
+		return String.format(Locale.US, "%-32s %6d %16.3f +- %12.3f %14.1f",
+				c.name, totalOps, mean / 1000.0, stddev / 1000.0,
+				totalBytes / totalOps);
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Entry Point
+	////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args Command line arguments.
+	 * @see danaus.Benchmark
+	 */
+	public static void main(String args[]) throws Exception {
+		List<String> filters = new ArrayList<String>();
+		PrintStream out = System.out;
+		for (int i = 0; i < args.length;) {
+			switch (args[i]) {
+			case ("-w"):
+				WARMUP_ITERATIONS = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case ("-i"):
+				MEASUREMENT_ITERATIONS = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case ("-t"):
+				ITERATION_TIME = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case ("-o"):
+				out = open(args[i + 1]);
+				i += 2;
+				break;
+			default:
+				filters.add(args[i]);
+				i++;
+				break;
+			}
+		}
+
+		/* Simulations are headless and deterministic. */
+		Simulator.HEADLESS = true;
+		Simulator.INFINITE_ENERGY = true;
+		Simulator.SEED = SEED;
+		Simulator.CLASS_NAMES.add("student.Butterfly");
+
+		out.println("# " + System.getProperty("java.vm.name") + " " +
+				System.getProperty("java.version") + ", " +
+				Runtime.getRuntime().availableProcessors() + " cpus");
+		out.println("# warmup: " + WARMUP_ITERATIONS + " x " + ITERATION_TIME +
+				" ms, measurement: " + MEASUREMENT_ITERATIONS + " x " +
+				ITERATION_TIME + " ms" + (!Common.thread_allocation_supported() ?
+				", allocation profiling unsupported" : ""));
+		out.println(String.format("%-32s %6s %16s    %12s %14s",
+				"Benchmark", "Ops", "Score (us/op)", "Error", "Alloc (B/op)"));
+
+		for (Case c : cases()) {
+			if (!filters.isEmpty() && !matches(c.name, filters)) {
+				continue;
+			}
+			out.println(measure(c));
+		}
+
+		if (out != System.out) {
+			out.close();
+		}
+	}
+
+	/* Returns true iff name contains one of filters. */
+	private static boolean matches(String name, List<String> filters) {
+		for (String filter : filters) {
+			if (name.contains(filter)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* Opens a results file, creating its directory if needed. */
+	private static PrintStream open(String filename) throws FileNotFoundException {
+		File file = new File(filename);
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		return new PrintStream(file);
+	}
+
+	/* Benchmark is never instantiated. */
+	private Benchmark() {}
+}
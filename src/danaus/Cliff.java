@@ -6,9 +6,9 @@ package danaus;
 public class Cliff extends Tile {
 	/* Tile specific constants. @see main.Tile */
 	private static final String NAME = "cliff";
-	private static final boolean FLYABLE = false; 
-	private static final int SLOW_DOWN = Integer.MAX_VALUE;
-	private static final int POWER_COST = Integer.MAX_VALUE;
+	private static final boolean FLYABLE = TileType.CLIFF.flyable; 
+	private static final int SLOW_DOWN = TileType.CLIFF.slowDown;
+	private static final int POWER_COST = TileType.CLIFF.powerCost;
 			
 	/**
 	 * Constructor: a instance with name "cliff", skin skin. <br>
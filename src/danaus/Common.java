@@ -5,6 +5,8 @@ import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.concurrent.Semaphore;
 import javax.imageio.ImageIO;
 import org.w3c.dom.Element;
@@ -240,6 +242,64 @@ public class Common {
 		}
 	}
 	
+	/**
+	 * Returns the CPU time used by the current thread, in nanoseconds. Unlike
+	 * wall time, CPU time does not include time the thread spent descheduled.
+	 * 
+	 * @return CPU time of the current thread, or 0 if it cannot be measured.
+	 */
+	public static long thread_cpu_time() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!threads.isCurrentThreadCpuTimeSupported()) {
+			return 0;
+		}
+		return threads.getCurrentThreadCpuTime();
+	}
+	
+	/**
+	 * Returns true if the JVM can count the bytes each thread allocates.
+	 * 
+	 * @return True if thread_allocated_bytes() measures allocation.
+	 */
+	public static boolean thread_allocation_supported() {
+		return AllocationCounter.THREADS != null;
+	}
+	
+	/**
+	 * Returns the number of bytes allocated so far by the current thread. 
+	 * Only differences between two calls are meaningful.
+	 * 
+	 * @return Bytes allocated by the current thread, or 0 if they cannot be
+	 * measured.
+	 */
+	public static long thread_allocated_bytes() {
+		if (AllocationCounter.THREADS == null) {
+			return 0;
+		}
+		return AllocationCounter.THREADS.getThreadAllocatedBytes(
+				Thread.currentThread().getId());
+	}
+	
+	/* Holds the allocation counters of the JVM, or null if they are 
+	 * unsupported. They are looked up and enabled the first time they are
+	 * used, not when Common is loaded. */
+	private static class AllocationCounter {
+		static final com.sun.management.ThreadMXBean THREADS;
+		
+		static {
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if (threads instanceof com.sun.management.ThreadMXBean &&
+					((com.sun.management.ThreadMXBean) threads)
+					.isThreadAllocatedMemorySupported()) {
+				THREADS = (com.sun.management.ThreadMXBean) threads;
+				THREADS.setThreadAllocatedMemoryEnabled(true);
+			}
+			else {
+				THREADS = null;
+			}
+		}
+	}
+	
 	/**
 	 * Returns the absolute path of the bin directory of Danaus' .class files.
 	 * 
@@ -1,86 +1,160 @@
 package danaus;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
 
 /**
- * A debugging tool shed, Debugger has many useful debugging tools that can 
- * help log a program, check for null parameters, etc.  
+ * A debugging tool shed, Debugger has many useful debugging tools that can
+ * help log a program, check for null parameters, etc.
+ * <br>
+ * Every logging function comes in two flavors. The plain flavor takes a
+ * finished message. The Supplier flavor takes a function that builds the
+ * message, and builds nothing unless its level is enabled, so
+ *
+ *     Debugger.DEBUG(() -> "Tiles: " + Arrays.deepToString(tiles));
+ *
+ * costs next to nothing when debugging is off. A function that captures
+ * variables is still allocated on every call, so calls in hot loops are
+ * guarded by their level's enabled flag instead.
+ * <br>
+ * Debug and warning messages are written asynchronously: the calling thread
+ * only stamps the message with the current time and places it in a ring
+ * buffer. A background thread formats the time and prints the message, so
+ * enabling debugging barely disturbs the timing of a simulation. Errors are
+ * printed immediately, after every pending message.
  */
 public class Debugger {
-	/** Debugging on-off switches. When an enable is set to to true, it's 
+	/** Debugging on-off switches. When an enable is set to to true, it's
 	 * corresponding debugging function will produce output. Otherwise, it will
 	 * not. For example, if DEBUG_ENABLED is true, the DEBUG method will print
 	 * to standard output. If DEBUG_ENABLES is false, DEBUG does nothing. */
 	public static boolean DEBUG_ENABLED   = false;
 	public static boolean WARNING_ENABLED = false;
 	public static boolean ERROR_ENABLED   = true;
-	
+
 	/** NULL_CHECK checks for null iff NULL_CHECK_ENABLED is true. */
 	public static boolean NULL_CHECK_ENABLED = true;
-	
+
+	/** Debug and warning messages are printed by a background thread iff
+	 * ASYNC_ENABLED is true. Otherwise, they are printed by the caller. */
+	public static boolean ASYNC_ENABLED = true;
+
 	/** The time log formatting string. Each message is prefixed by a time log
-	 * that is formatted by a SimpleDateFormat with the following pattern. */
-	private static String DATE_FORMAT = "HH:mm:ss.SSSS";
-	
+	 * that is formatted with the following pattern. SimpleDateFormat printed 
+	 * "SSSS" as milliseconds padded to four digits, so the pattern pads them
+	 * with a literal zero to keep the log unchanged. */
+	private static String DATE_FORMAT = "HH:mm:ss.'0'SSS";
+
+	/** The formatter of every time log. Unlike a SimpleDateFormat, it is
+	 * immutable, so it is created once and shared. */
+	private static final DateTimeFormatter FORMATTER =
+			DateTimeFormatter.ofPattern(DATE_FORMAT)
+			.withZone(ZoneId.systemDefault());
+
+	/** The number of messages the ring buffer holds. When it is full, callers
+	 * wait for the background thread to catch up rather than lose messages. */
+	private static final int BUFFER_SIZE = 4096;
+
+	/** The ring buffer of messages waiting to be printed, or null until the
+	 * first message is logged asynchronously. */
+	private static BlockingQueue<Entry> buffer;
+
+	////////////////////////////////////////////////////////////////////////////
+	// DEBUG
+	////////////////////////////////////////////////////////////////////////////
 	/**
 	 * If DEBUG_ENABLED is true, prints a message logged with the current time.
-	 * 
+	 *
 	 * @param message A debug message.
 	 */
 	public static void DEBUG(String message) {
 		if (!DEBUG_ENABLED) {
 			return;
 		}
-		
-		// Gather the time and format it nicely.
-		Date date= new Date();
-		SimpleDateFormat formatter= new SimpleDateFormat(DATE_FORMAT);
-		
-		System.out.println("[" + formatter.format(date) + "] DEBUG  : " + 
-		                   message);
+		log("DEBUG  ", message);
+	}
+
+	/**
+	 * If DEBUG_ENABLED is true, prints the message built by message logged
+	 * with the current time.
+	 *
+	 * @param message A function building a debug message.
+	 */
+	public static void DEBUG(Supplier<String> message) {
+		if (!DEBUG_ENABLED) {
+			return;
+		}
+		log("DEBUG  ", message.get());
 	}
-	
+
+	////////////////////////////////////////////////////////////////////////////
+	// WARNING
+	////////////////////////////////////////////////////////////////////////////
 	/**
 	 * If WARNING_ENABLED is true, print message logged with the current time.
-	 * 
-	 * @param message A warning message. 
+	 *
+	 * @param message A warning message.
 	 */
 	public static void WARNING(String message) {
 		if (!WARNING_ENABLED) {
 			return;
 		}
-		
-		// Gather the time and format it nicely.
-		Date date= new Date();
-		SimpleDateFormat formatter= new SimpleDateFormat(DATE_FORMAT);
-		
-		System.out.println("[" + formatter.format(date) + "] WARNING: " + 
-		                   message);
+		log("WARNING", message);
 	}
-	
+
+	/**
+	 * If WARNING_ENABLED is true, print the message built by message logged
+	 * with the current time.
+	 *
+	 * @param message A function building a warning message.
+	 */
+	public static void WARNING(Supplier<String> message) {
+		if (!WARNING_ENABLED) {
+			return;
+		}
+		log("WARNING", message.get());
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// ERROR
+	////////////////////////////////////////////////////////////////////////////
 	/**
 	 * If ERROR_ENABLED is true, print message logged with the current time.
-	 * 
+	 *
 	 * @param message An error message.
 	 */
 	public static void ERROR(String message) {
 		if (!ERROR_ENABLED) {
 			return;
 		}
-		
-		// Gather the time and format it nicely.
-		Date date= new Date();
-		SimpleDateFormat formatter= new SimpleDateFormat(DATE_FORMAT);
-		
-		System.out.println("[" + formatter.format(date) + "] ERROR  : " + 
-		                   message);
+
+		// Errors often precede an exit, so they are never left in the buffer.
+		flush();
+		print(new Entry(System.currentTimeMillis(), "ERROR  ", message));
+	}
+
+	/**
+	 * If ERROR_ENABLED is true, print the message built by message logged
+	 * with the current time.
+	 *
+	 * @param message A function building an error message.
+	 */
+	public static void ERROR(Supplier<String> message) {
+		if (!ERROR_ENABLED) {
+			return;
+		}
+		ERROR(message.get());
 	}
-	
+
 	/**
 	 * If NULL_CHECK_ENABLED is true and obj is null, print message and
 	 * throw a NullPointerException.
-	 * 
+	 *
 	 * @param obj An object.
 	 * @param message An error message to produce if obj is null.
 	 */
@@ -88,10 +162,121 @@ public class Debugger {
 		if (!NULL_CHECK_ENABLED) {
 			return;
 		}
-		
+
 		if (obj == null) {
 			ERROR(message);
 			throw new NullPointerException();
 		}
 	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Asynchronous Sink
+	////////////////////////////////////////////////////////////////////////////
+	/** A message waiting to be printed, stamped with the time it was logged.
+	 * An entry with a latch but no message marks a flush. */
+	private static class Entry {
+		final long millis;
+		final String level;
+		final String message;
+		final CountDownLatch flushed;
+
+		Entry(long millis, String level, String message) {
+			this.millis = millis;
+			this.level = level;
+			this.message = message;
+			this.flushed = null;
+		}
+
+		Entry(CountDownLatch flushed) {
+			this.millis = 0;
+			this.level = null;
+			this.message = null;
+			this.flushed = flushed;
+		}
+	}
+
+	/* Stamps message with the current time and prints it, asynchronously if
+	 * ASYNC_ENABLED is true. */
+	private static void log(String level, String message) {
+		Entry entry = new Entry(System.currentTimeMillis(), level, message);
+		if (!ASYNC_ENABLED) {
+			print(entry);
+			return;
+		}
+
+		try {
+			sink().put(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			print(entry);
+		}
+	}
+
+	/* Prints entry, formatting its time. */
+	private static void print(Entry entry) {
+		System.out.println("[" + FORMATTER.format(Instant.ofEpochMilli(
+				entry.millis)) + "] " + entry.level + ": " + entry.message);
+	}
+
+	/**
+	 * Waits until every message logged so far has been printed. Messages are
+	 * flushed automatically when the JVM exits.
+	 */
+	public static void flush() {
+		BlockingQueue<Entry> pending;
+		synchronized (Debugger.class) {
+			pending = buffer;
+		}
+		if (pending == null) {
+			return;
+		}
+
+		CountDownLatch flushed = new CountDownLatch(1);
+		try {
+			pending.put(new Entry(flushed));
+			flushed.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/* Returns the ring buffer, starting the thread that prints it if this is
+	 * the first asynchronous message. */
+	private static synchronized BlockingQueue<Entry> sink() {
+		if (buffer != null) {
+			return buffer;
+		}
+
+		final BlockingQueue<Entry> entries =
+				new ArrayBlockingQueue<Entry>(BUFFER_SIZE);
+		Thread printer = new Thread(new Runnable() {
+			public @Override void run() {
+				while (true) {
+					try {
+						Entry entry = entries.take();
+						if (entry.flushed != null) {
+							System.out.flush();
+							entry.flushed.countDown();
+						}
+						else {
+							print(entry);
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "debugger-sink");
+		printer.setDaemon(true);
+		printer.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public @Override void run() {
+				flush();
+			}
+		}, "debugger-flush"));
+
+		buffer = entries;
+		return buffer;
+	}
 }
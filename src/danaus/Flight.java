@@ -0,0 +1,225 @@
+package danaus;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/* *************************************************************************//**
+ * Danaus' Java Flight Recorder events. Flight records the stages of map
+ * generation, the learning and running phases of a simulation, and a sample
+ * of the butterfly's moves, so that GC pauses, JIT compilation, and the like
+ * can be lined up with what the simulation was doing.
+ * <br>
+ * Recording is started with start(...) and written to a file by stop().
+ * Until then ENABLED is false, every recording method returns immediately,
+ * and no event is ever allocated.
+ *
+ * @see danaus.Simulator#handle_arguments(String[])
+ * ****************************************************************************/
+public class Flight {
+	/** Events are recorded iff ENABLED is true. */
+	public static boolean ENABLED = false;
+
+	/** Only one move in every MOVE_SAMPLE_PERIOD turns is recorded. */
+	public static int MOVE_SAMPLE_PERIOD = 64;
+
+	/** The recording in progress, or null. */
+	private static Recording recording;
+
+	////////////////////////////////////////////////////////////////////////////
+	// Events
+	////////////////////////////////////////////////////////////////////////////
+	/** A stage of map generation. */
+	@Name("danaus.Generation")
+	@Label("Map Generation")
+	@Category("Danaus")
+	@Description("A stage of random map generation")
+	static class GenerationEvent extends Event {
+		@Label("Stage")
+		String stage;
+		@Label("Height")
+		int height;
+		@Label("Width")
+		int width;
+	}
+
+	/** A phase of a simulation flown by a single butterfly. */
+	@Name("danaus.Phase")
+	@Label("Simulation Phase")
+	@Category("Danaus")
+	@Description("The learning or running phase of a butterfly")
+	static class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+		@Label("Butterfly")
+		String butterfly;
+		@Label("Turn")
+		@Description("The butterfly's turn when the phase ended")
+		long turn;
+		@Label("Row")
+		int row;
+		@Label("Column")
+		int col;
+	}
+
+	/** A single move of a butterfly. */
+	@Name("danaus.Move")
+	@Label("Butterfly Move")
+	@Category("Danaus")
+	@Description("A sampled move of a butterfly from one tile to another")
+	static class MoveEvent extends Event {
+		@Label("Butterfly")
+		String butterfly;
+		@Label("Turn")
+		long turn;
+		@Label("From Row")
+		int fromRow;
+		@Label("From Column")
+		int fromCol;
+		@Label("To Row")
+		int toRow;
+		@Label("To Column")
+		int toCol;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Recording
+	////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Starts a flight recording, using the JDK's default settings, that will
+	 * be written to the file named filename.
+	 *
+	 * @param filename The name of the recording file.
+	 */
+	public static void start(String filename) {
+		try {
+			recording = new Recording(Configuration.getConfiguration("default"));
+			recording.enable(GenerationEvent.class);
+			recording.enable(PhaseEvent.class);
+			recording.enable(MoveEvent.class);
+			recording.setDestination(Paths.get(filename));
+			recording.start();
+		} catch (IOException | ParseException e) {
+			Debugger.ERROR("Unable to start flight recording: " + e.getMessage());
+			System.exit(1);
+		}
+
+		ENABLED = true;
+	}
+
+	/**
+	 * Stops the flight recording and writes it to its file.
+	 */
+	public static void stop() {
+		if (recording == null) {
+			return;
+		}
+
+		ENABLED = false;
+		recording.stop();
+		recording.close();
+		recording = null;
+	}
+
+	/**
+	 * Begins a stage of generating a map of height rows and width columns.
+	 *
+	 * @param stage The name of the stage.
+	 * @return The stage's event, to be passed to end(...), or null if events
+	 * 		are disabled.
+	 */
+	static GenerationEvent beginStage(String stage, int height, int width) {
+		if (!ENABLED) {
+			return null;
+		}
+
+		GenerationEvent event = new GenerationEvent();
+		event.stage = stage;
+		event.height = height;
+		event.width = width;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends a stage of map generation.
+	 *
+	 * @param event The event returned by beginStage(...), or null.
+	 */
+	static void endStage(GenerationEvent event) {
+		if (event != null) {
+			event.commit();
+		}
+	}
+
+	/**
+	 * Begins a phase of a simulation.
+	 *
+	 * @param phase The name of the phase.
+	 * @return The phase's event, to be passed to endPhase(...), or null if
+	 * 		events are disabled.
+	 */
+	static PhaseEvent beginPhase(String phase) {
+		if (!ENABLED) {
+			return null;
+		}
+
+		PhaseEvent event = new PhaseEvent();
+		event.phase = phase;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends a phase of a simulation flown by butterfly b.
+	 *
+	 * @param event The event returned by beginPhase(...), or null.
+	 * @param b The butterfly that flew the phase.
+	 */
+	static void endPhase(PhaseEvent event, AbstractButterfly b) {
+		if (event == null) {
+			return;
+		}
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.butterfly = b.getClass().getName();
+			event.turn = b.stats.turn.sum();
+			event.row = b.location.row;
+			event.col = b.location.col;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records the move of butterfly b on its turn-th turn, if turn is
+	 * sampled.
+	 */
+	static void move(AbstractButterfly b, long turn, int fromRow, int fromCol,
+			int toRow, int toCol) {
+		if (turn % MOVE_SAMPLE_PERIOD != 0) {
+			return;
+		}
+
+		MoveEvent event = new MoveEvent();
+		if (event.shouldCommit()) {
+			event.butterfly = b.getClass().getName();
+			event.turn = turn;
+			event.fromRow = fromRow;
+			event.fromCol = fromCol;
+			event.toRow = toRow;
+			event.toCol = toCol;
+			event.commit();
+		}
+	}
+
+	/* Flight is never instantiated. */
+	private Flight() {}
+}
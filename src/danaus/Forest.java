@@ -6,9 +6,9 @@ package danaus;
 public class Forest extends Tile {
 	/* Tile specific constants. @see main.Tile */
 	private static final String NAME = "forest";
-	private static final boolean FLYABLE = true; 
-	private static final int SLOW_DOWN = 1;
-	private static final int POWER_COST = 0;
+	private static final boolean FLYABLE = TileType.FOREST.flyable; 
+	private static final int SLOW_DOWN = TileType.FOREST.slowDown;
+	private static final int POWER_COST = TileType.FOREST.powerCost;
 			
 	/***************************************************************************
      * Constructor: a flyable instance with name "forest", skin skin. <br>
@@ -27,7 +27,10 @@ public class GUI extends JFrame implements ChangeListener {
 	/** A contrasting color that lies between components. */
 	public static Color MARGIN_COLOR = new Color(0, 43, 54);
 	
+	/** The background music, or null until it is loaded. Guarded by this GUI. */
 	private Clip audio;
+	/** Whether the music is muted. Guarded by this GUI. */
+	private boolean muted = true;
 
 	/** The slider element that controls the animation's fpm. */
 	private JSlider fpmSlider;
@@ -42,6 +45,8 @@ public class GUI extends JFrame implements ChangeListener {
 	 GUIState statePanel;
 	/** The eastern tile info panel. */
 	 GUITileInfo tileInfoPanel;
+	/** The eastern minimap panel. */
+	 GUIMinimap minimapPanel;
 	/** The center panel. */
 	private GUIMap mapPanel;
 	/* The northern panel is not stored because it is never referenced. */
@@ -59,6 +64,7 @@ public class GUI extends JFrame implements ChangeListener {
 		 * panel of the GUI, since those two components reference the center 
 		 * panel. */
 		initGUI(mainPanel, s.park.map.seed);
+		initImages();
 		initCenter(mainPanel, s.park.map.butterfly, s.park.map.tiles);
 		initMenu();
 		initNorth(mainPanel);
@@ -84,21 +90,59 @@ public class GUI extends JFrame implements ChangeListener {
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 	}
 	
+	/* *********************************************************************//**
+	 * Decodes every image in the background, so the frame can show while they
+	 * are. An image drawn before its turn is decoded when it is drawn.
+	 * ************************************************************************/
+	private void initImages() {
+		Thread preload = new Thread(new Runnable() {
+			public @Override void run() {
+				ImageAtlas.preload();
+			}
+		}, "image-preload");
+		preload.setDaemon(true);
+		preload.start();
+	}
+	
+	/** 
+	 * Initialize the audio in the background, so the frame can show while it 
+	 * loads. The music plays once it is loaded, unless it is muted.
+	 */
+	private void initAudio() {
+		Thread loader = new Thread(new Runnable() {
+			public @Override void run() {
+				Clip clip = loadAudio();
+				if (clip == null) {
+					return;
+				}
+				synchronized (GUI.this) {
+					audio = clip;
+					if (!muted) {
+						play();
+					}
+				}
+			}
+		}, "audio-loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+	
 	/** 
-	 * Initialize the audio, using a playing sound found on the web.
-     * Borrowed heavily from
+	 * Returns the audio, using a playing sound found on the web, or null if it
+	 * cannot be loaded. Borrowed heavily from
      * // http://www3.ntu.edu.sg/home/ehchua/programming/java/J8c_PlayingSound.html
      */
-	private void initAudio() {
+	private Clip loadAudio() {
 		try {
 			Path p = Paths.get(Common.absolute_path() + "/../res/audio/zelda.wav");
 			File music = new File(p.toUri());
 			AudioInputStream audioStream = AudioSystem.getAudioInputStream(music);
-			audio = AudioSystem.getClip();
-			audio.open(audioStream);
+			Clip clip = AudioSystem.getClip();
+			clip.open(audioStream);
 			long startMicrosecond = 
-                (long) new Randomer().nextInt((int) audio.getMicrosecondLength());
-			audio.setMicrosecondPosition(startMicrosecond);
+                (long) new Randomer().nextInt((int) clip.getMicrosecondLength());
+			clip.setMicrosecondPosition(startMicrosecond);
+			return clip;
 		} catch (IOException e) {
 			e.printStackTrace();
 		} catch (UnsupportedAudioFileException e) {
@@ -106,6 +150,15 @@ public class GUI extends JFrame implements ChangeListener {
         } catch (LineUnavailableException e) {
             e.printStackTrace();
         }
+		return null;
+	}
+	
+	/** 
+	 * Plays the audio on a loop. It must be loaded.
+	 */
+	private void play() {
+		audio.start();
+		audio.loop(Clip.LOOP_CONTINUOUSLY);
 	}
 	
 	/* *********************************************************************//**
@@ -133,17 +186,21 @@ public class GUI extends JFrame implements ChangeListener {
 		settings.setMnemonic(KeyEvent.VK_S);
 		settings.setToolTipText("Alt-S");
 		
-		audio.stop();
 		JCheckBoxMenuItem _mute = makeJCheckBoxMenuItem("Mute", 
 			KeyEvent.VK_M, "Ctrl-M", true,
 			new ActionListener() {
 				public @Override void actionPerformed(ActionEvent e) {
-					if (audio.isRunning()) {
-						audio.stop();
-					}
-					else {
-						audio.start();
-						audio.loop(Clip.LOOP_CONTINUOUSLY);
+					synchronized (GUI.this) {
+						muted = !muted;
+						if (audio == null) {
+							return;
+						}
+						if (muted) {
+							audio.stop();
+						}
+						else {
+							play();
+						}
 					}
 				}
 			}
@@ -160,6 +217,32 @@ public class GUI extends JFrame implements ChangeListener {
 				}
 			);
 
+		/* View */
+		JMenu view = new JMenu("View");
+		view.setMnemonic(KeyEvent.VK_V);
+		view.setToolTipText("Alt-V");
+		
+		ButtonGroup overlays = new ButtonGroup();
+		String[] names = {"No Overlay", "Visit Count", "Time Since Visit", 
+				"Aroma Intensity"};
+		String[] tips = {"Show the map only", 
+				"Color tiles by how often they were entered",
+				"Color tiles by how recently they were entered",
+				"Color tiles by the intensity of their strongest aroma"};
+		for (final GUIMap.Overlay overlay : GUIMap.Overlay.values()) {
+			JCheckBoxMenuItem _overlay = makeJCheckBoxMenuItem(
+				names[overlay.ordinal()], KeyEvent.VK_0 + overlay.ordinal(), 
+				tips[overlay.ordinal()], overlay == GUIMap.Overlay.NONE,
+				new ActionListener() {
+					public @Override void actionPerformed(ActionEvent e) {
+						mapPanel.setOverlay(overlay);
+					}
+				}
+			);
+			overlays.add(_overlay);
+			view.add(_overlay);
+		}
+
 		file.addSeparator();
 		file.add(_exit);
 		file.add(settings);
@@ -169,6 +252,7 @@ public class GUI extends JFrame implements ChangeListener {
 		
 		menuBar.add(file);
 		menuBar.add(settings);
+		menuBar.add(view);
 		
 		setJMenuBar(menuBar);
 	}
@@ -254,8 +338,8 @@ public class GUI extends JFrame implements ChangeListener {
 	
 	/***************************************************************************
      * Place on the east of p the east panel of the GUI, which displays
-	 * the state of the simulation. The information is taken from a park
-	 * state object.
+	 * the state of the simulation and a minimap. The information is taken 
+	 * from a park state object.
      *
 	 * @param p The GUI's main panel which should have a BorderLayout
 	 * ************************************************************************/
@@ -263,9 +347,12 @@ public class GUI extends JFrame implements ChangeListener {
 		JPanel east = new JPanel(new BorderLayout());
 		statePanel = new GUIState();
 		tileInfoPanel = new GUITileInfo();
+		minimapPanel = new GUIMinimap(mapPanel, simulator.park.map.tiles);
+		mapPanel.setMinimap(minimapPanel);
 		
 		east.add(statePanel, BorderLayout.CENTER);
 		east.add(tileInfoPanel, BorderLayout.EAST);
+		east.add(minimapPanel, BorderLayout.SOUTH);
 		
 		p.add(east, BorderLayout.EAST);
 	}
@@ -1,16 +1,18 @@
 package danaus;
 
 import java.awt.*;
-import java.awt.event.*;
-import javax.swing.*;
 import java.awt.image.BufferedImage;
 
 /* *************************************************************************//**
  * An instance represents an animated butterfly. Inspiration and information
  * for writing this class was taken heavily from 
  * http://docs.oracle.com/javase/tutorial/uiswing/components/slider.html
+ * <br><br>
+ * The butterfly has no timers of its own. The map's frame clock ticks it, and
+ * both its moves and its flapping advance by the time elapsed since the last
+ * tick, so they keep their pace however irregularly frames arrive.
  * ****************************************************************************/
-public class GUIButterfly implements ActionListener {
+public class GUIButterfly {
 	/** The number of unique frames in a flap sequence. */
 	private static int UNIQUE_FRAMES = 3;
 	/** The sequence of frame indices that constitute a flap animation. */
@@ -19,14 +21,20 @@ public class GUIButterfly implements ActionListener {
 	private static int FRAMES_PER_FLAP = FRAME_SEQUENCE.length;
 	/** The frames per second of the flapping animation. */
 	private static int FLAP_FPS = 10;
-	/** The timer delay of the flapping animation. */
-	private static int FLAP_DELAY = 1000 / FLAP_FPS;
+	/** The frame rate moves are counted in: a move of fpm frames takes fpm /
+	 * MOVE_FPS seconds, whatever the rate the map is painted at. */
+	private static int MOVE_FPS = 60;
+	/** The most time, in nanoseconds, a single tick advances the animation,
+	 * so the butterfly does not jump after the GUI stalls. */
+	private static long MAX_TICK = 250000000L;
 	
     /** The current frame index. */
 	private int frame;
 	
-    /** The flapping timer. */
-	Timer flapTimer;
+    /** The time of the last tick, or 0 before the first, and the time spent
+     * flapping, in nanoseconds. */
+	private long lastTick;
+	private long flapTime;
 	
 	/** indices into the array of flapping frames. */
 	public static int NORTH_INDEX = 0;
@@ -59,9 +67,16 @@ public class GUIButterfly implements ActionListener {
     int mapWidth;
     /** The height of the map the butterfly is on. */
     int mapHeight;
+    /** The side length of the map's tiles, which the butterfly is scaled to. */
+    int sideLength = ImageAtlas.SIDE_LENGTH;
 
-    /** The current move count. When this reaches the fpm, a move is done. */ 
-    int moveCount;
+    /** The current move count, in frames at MOVE_FPS, or -1 if there is no
+     * move. When this reaches the fpm, a move is done. */ 
+    float moveCount;
+
+    /** The top left point of the butterfly at the start of the current move. */
+    float startXTopLeft;
+    float startYTopLeft;
 
     /** x-coordinate of the top left corner of the current move destination. */ 
     int destXTopLeft;
@@ -95,8 +110,6 @@ public class GUIButterfly implements ActionListener {
      **************************************************************************/
     public GUIButterfly(GUIMap map, int width, int height) {
 		initFrames();
-		flapTimer = new Timer(FLAP_DELAY, this);
-		flapTimer.start();
 		
 		moveCount = -1;
 		fpm = GUIMap.INIT_FPM;
@@ -134,7 +147,7 @@ public class GUIButterfly implements ActionListener {
 		for (int i = 0; i < UNIQUE_FRAMES; i++) {
 			String filename = "res/butterfly/butterfly_" + direction;
 			filename += "_" + i + ".png";
-			frames[i] = Common.load_image(filename);
+			frames[i] = ImageAtlas.get(filename);
 		}
 		return frames;
 	}
@@ -147,9 +160,6 @@ public class GUIButterfly implements ActionListener {
      * direction d. sideLength is the length of a side of the map's tiles. 
      **************************************************************************/
 	public void move(int s, Direction d, int toRow, int toCol, int sideLength) {
-		/* Setting the move count to a non negative integer allows it to be
-		 * incremented. */
-		moveCount = 0;
 		slowDownFactor = s + 2; // -1 if full fast
 		slowfpm = fpm * slowDownFactor;
 		updateDirection(d);
@@ -166,6 +176,12 @@ public class GUIButterfly implements ActionListener {
 		if (Math.abs(dy) > sideLength) {
 			dy = -1 * Common.unit_scalar(dy) * (mapHeight - Math.abs(dy));
 		}
+		startXTopLeft = xTopLeft;
+		startYTopLeft = yTopLeft;
+		
+		/* Setting the move count to a non negative integer allows it to be
+		 * incremented. It is set last, once the move is fully described. */
+		moveCount = 0;
 	}
 	
 	/* *********************************************************************//**
@@ -176,6 +192,26 @@ public class GUIButterfly implements ActionListener {
 		map.gui.wakeupSimulator();
 	}
 	
+	/* *********************************************************************//**
+	 * Rescales the butterfly, its position, and its current move to tiles of
+	 * side length s on a map width by height pixels, after a zoom.
+	 * ************************************************************************/
+	public void rescale(int s, int width, int height) {
+		float factor = s / (float) sideLength;
+		xTopLeft *= factor;
+		yTopLeft *= factor;
+		startXTopLeft *= factor;
+		startYTopLeft *= factor;
+		destXTopLeft = Math.round(destXTopLeft * factor);
+		destYTopLeft = Math.round(destYTopLeft * factor);
+		dx = Math.round(dx * factor);
+		dy = Math.round(dy * factor);
+		
+		sideLength = s;
+		mapWidth = width;
+		mapHeight = height;
+	}
+	
 	/* *********************************************************************//**
 	 * True if the butterfly is moving.
 	 * ************************************************************************/
@@ -184,14 +220,19 @@ public class GUIButterfly implements ActionListener {
 	}
 	
 	/* *********************************************************************//**
-	 * If a move is occurring, add addend to the move count.
+	 * Advances the flapping and, if a move is occurring and the butterfly is 
+	 * not frozen, the move, by the time elapsed since the last tick. now is
+	 * the time of the tick, in nanoseconds.
 	 * ************************************************************************/
-	public void moveAdd(int addend) {
-		if (frozen) {
-			return;
-		}
-		if (isMoving()) {
-			moveCount += addend;
+	public void tick(long now) {
+		long elapsed = lastTick == 0 ? 0 : Math.min(now - lastTick, MAX_TICK);
+		lastTick = now;
+		
+		flapTime += elapsed;
+		frame = (int) (flapTime * FLAP_FPS / 1000000000L % FRAMES_PER_FLAP);
+		
+		if (!frozen && isMoving()) {
+			moveCount += elapsed * MOVE_FPS / 1e9f;
 			updatePosition();
 		}
 	}
@@ -208,37 +249,12 @@ public class GUIButterfly implements ActionListener {
 			endMove();
 		}
 		else {
-//			System.out.println((int) (dx / (float)moveCount));
-//			System.out.println((int) (dy / (float)moveCount));
-//			System.out.println("");
-			nudge(getNudgeX(), getNudgeY());
+			float progress = moveCount / slowfpm;
+			xTopLeft = Common.mod(startXTopLeft + dx * progress, mapWidth);
+			yTopLeft = Common.mod(startYTopLeft + dy * progress, mapHeight);
 		}
 	}
 	
-	/* *********************************************************************//**
-	 * Nudges the butterfly's position along by (dx, dy)
-	 * ************************************************************************/
-	public void nudge(float dx, float dy) {
-		xTopLeft = Common.mod(xTopLeft + dx, mapWidth);
-		yTopLeft = Common.mod(yTopLeft + dy, mapHeight);
-	}
-	
-	/* *********************************************************************//**
-	 * Returns the small amount to nudge the butterfly each turn in the x 
-     * direction.
-	 * ************************************************************************/
-	private float getNudgeX() {
-		return dx / (float)slowfpm;
-	}
-	
-	/* *********************************************************************//**
-	 * Returns the small amount to nudge the butterfly each turn in the y
-     * direction.
-	 * ************************************************************************/
-	private float getNudgeY() {
-		return dy / (float)slowfpm;
-	}
-	
 	/* *********************************************************************//**
 	 * Change the butterfly's fpm to fpm. This is triggered by the fps slider at the
 	 * top of the GUI.
@@ -301,16 +317,11 @@ public class GUIButterfly implements ActionListener {
 	}
 	
 	/* *********************************************************************//**
-	 * Returns the current frame in the flap animation.
+	 * Returns the current frame in the flap animation, scaled to the map's
+	 * tiles.
 	 * ************************************************************************/
 	public Image getFrame() {
-		return directionsCache[directionIndex][FRAME_SEQUENCE[frame]];
-	}
-	
-	/* *********************************************************************//**
-	 * Increment the frame. Triggered by the flap timer.
-	 * ************************************************************************/
-	public @Override void actionPerformed(ActionEvent e) {
-		frame = Common.mod(frame + 1, FRAMES_PER_FLAP);
+		return ImageAtlas.scaled(
+				directionsCache[directionIndex][FRAME_SEQUENCE[frame]], sideLength);
 	}
 }
@@ -2,6 +2,15 @@ package danaus;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.swing.*;
 
 /* *************************************************************************//**
@@ -10,22 +19,78 @@ import javax.swing.*;
 @SuppressWarnings("serial")
 public class GUIMap extends JPanel implements MouseListener, MouseMotionListener, 
 MouseWheelListener, ActionListener {
-	/** The main painting loop's frames per second. */
+	/** The main painting loop's frames per second, unless the display's
+	 * refresh rate is known. */
 	private static int GUI_FPS = 60;
-	/** The main painting loop's delay for the timer. */
-	private static int GUI_DELAY = 1000 / GUI_FPS;
+	/** The time, in nanoseconds, between redraws of the recency overlay. */
+	private static long RECENCY_REFRESH = 1000000000L;
 	/** The minimum frames per move. */
 	public static int MIN_FPM = 1;
 	/** The minimum frames per move. */
 	public static int MAX_FPM = 180;
 	/** The minimum frames per move. */
 	public static int INIT_FPM = 30;
-	/** The number of pixels zoomed in or out for every scroll of the mouse. */
-	@SuppressWarnings("unused")
-	private static int MOUSE_WHEEL_CONSTANT = 8;
+	/** The smallest and largest side lengths of a tile, in pixels. Every side
+	 * length in between is a power of two, so tiles are drawn from mipmaps. */
+	private static int MIN_SIDE_LENGTH = 1;
+	private static int MAX_SIDE_LENGTH = 64;
+	/** The side length of a chunk of the map's cached image, in pixels. */
+	private static int CHUNK_PIXELS = 512;
+	/** The most chunk images cached at once. */
+	private static int MAX_CHUNKS = 64;
+	/** The colors of the heatmap overlays, from cold to hot. */
+	private static Color[] HEAT = new Color[32];
+	static {
+		for (int i = 0; i < HEAT.length; i++) {
+			Color c = Color.getHSBColor(
+					0.67f * (1 - i / (float) (HEAT.length - 1)), 1, 1);
+			HEAT[i] = new Color(c.getRed(), c.getGreen(), c.getBlue(), 150);
+		}
+	}
+	/** The visit count at which the visits overlay is hottest. */
+	private static int MAX_VISITS = 16;
+	
+	/* *********************************************************************//**
+	 * The heatmaps that can be laid over the map.
+	 * ************************************************************************/
+	public enum Overlay {
+		/** No heatmap. */
+		NONE,
+		/** The number of times each tile was entered. */
+		VISITS,
+		/** The time since each tile was last entered; recent tiles are hot. */
+		RECENCY,
+		/** The intensity of the strongest aroma at each tile. */
+		AROMA
+	}
 	
-	/** The array of GUITiles: the heart of the map. */
-	private GUITile[][] tiles;
+	/** The tiles of the park's map. Tiles are drawn straight from them and 
+	 * the atlas, so the memory of the GUI does not grow with the map. */
+	private Tile[][] mapTiles;
+	/** The view state of every tile visited or flowered, keyed by
+	 * row * cols + col, and the bits of the tiles that have one, so drawing
+	 * any other tile costs a bit test. Only the event dispatch thread reads or
+	 * writes them. */
+	private HashMap<Integer, GUITile> views;
+	private BitSet viewed;
+	/** The images of the flowers of every flowered tile, keyed by 
+	 * row * cols + col, when the map was retiled, until the event dispatch
+	 * thread gives them to the tiles' views; otherwise null. */
+	private volatile HashMap<Integer, List<BufferedImage>> flowered;
+	/** The images of the tiles at the current side length, by filename. */
+	private HashMap<String, BufferedImage> backgrounds = 
+			new HashMap<String, BufferedImage>();
+	
+	/** The heatmap laid over the map. */
+	private volatile Overlay overlay = Overlay.NONE;
+	/** The latest turn any tile was entered. */
+	private long latestTurn;
+	/** The intensity of the strongest aroma at every tile, indexed by
+	 * row * cols + col, while the aroma overlay is laid; otherwise null. 
+	 * Replaced whole when the map is retiled. */
+	private volatile float[] aromas;
+	/** The frame clock's time the recency overlay was last redrawn. */
+	private long recencyDrawn;
 
 	/** The gui version of the butterfly */
 	private GUIButterfly butterfly;
@@ -42,6 +107,36 @@ MouseWheelListener, ActionListener {
 	/** The bottom right corner of the abstract camera. */
 	private Point cameraBottomRight;
 	
+	/** The map pre-rendered in chunks of chunkSize by chunkSize tiles, keyed
+	 * by chunk row * chunkCols + chunk column, least recently drawn first. Only
+	 * chunks that have been on screen are rendered. */
+	private Map<Integer, BufferedImage> chunks;
+	/** The number of tiles along a side of a chunk, and the number of rows and
+	 * columns of chunks. Chunks span CHUNK_PIXELS whatever the zoom, so
+	 * zooming out draws a few large chunks rather than many small ones. */
+	private int chunkSize, chunkRows, chunkCols;
+	/** The tiles moved to since the last frame, as (col, row). The simulator
+	 * adds to it, so it is guarded by itself. */
+	private final List<Point> changedTiles = new ArrayList<Point>();
+	/** The move the simulator began since the last frame, as its speed,
+	 * direction and destination (col, row), or a null destination if there is
+	 * none. The simulator waits for each move to end before the next, so there
+	 * is at most one. It is guarded by changedTiles, and handed to the
+	 * butterfly on the EDT, so only the EDT touches the butterfly. */
+	private int pendingSpeed;
+	private Direction pendingDirection;
+	private Point pendingMove;
+	/** True if every chunk must be rendered again, e.g. as the flowers
+	 * changed. */
+	private boolean retiled;
+	
+	/** The camera, the butterfly's bounds, and the butterfly's frame as last
+	 * painted. Only what differs from them is repainted. */
+	private Point paintedTopLeft = new Point(-1, -1);
+	private Point paintedBottomRight = new Point(-1, -1);
+	private Rectangle paintedButterfly;
+	private Image paintedFrame;
+	
     /** The current frames per move. */
 	public int fpm;
 	
@@ -57,6 +152,9 @@ MouseWheelListener, ActionListener {
     /** The gui that contains this map. Used to send signals upward. */
 	GUI gui;
 	
+	/** The minimap of this map, or null. */
+	private GUIMinimap minimap;
+	
     /***************************************************************************
      * Constructor: an instance for gui with butterfly bfly and tiles tiles. 
      **************************************************************************/
@@ -76,15 +174,21 @@ MouseWheelListener, ActionListener {
 		updateCamera();
 		
 		/* Load the tiles */
-		sideLength = 32;
+		sideLength = ImageAtlas.SIDE_LENGTH;
 		rows = tiles.length;
 		cols = tiles[0].length;
-		this.tiles = new GUITile[rows][cols];
-		for (int row = 0; row < rows; row++) {
-			for (int col = 0; col < cols; col++) {
-				this.tiles[row][col] = new GUITile(tiles[row][col], row, col);
+		mapTiles = tiles;
+		views = new HashMap<Integer, GUITile>();
+		viewed = new BitSet(rows * cols);
+		flowered = flowers(tiles);
+		updateFlowers();
+		chunks = new LinkedHashMap<Integer, BufferedImage>(16, 0.75f, true) {
+			protected @Override boolean removeEldestEntry(
+					Map.Entry<Integer, BufferedImage> eldest) {
+				return size() > MAX_CHUNKS;
 			}
-		}
+		};
+		updateChunks();
 		
 		/* Initialize the butterfly and fpm. */
 		fpm = INIT_FPM;
@@ -95,48 +199,77 @@ MouseWheelListener, ActionListener {
 		butterfly.yTopLeft = y;
 		
 		/* The first tile is visited, even if it is never moved to. */
-		GUITile tile = this.tiles[bfly.location.row][bfly.location.col];
-		tile.visited = true;
-		Common.change_brightness(tile.cachedImage, 0.8f);
+		GUITile start = getView(bfly.location.row * cols + bfly.location.col);
+		start.visits = 1;
+		start.lastEntered = 0;
 		
-		/* Begin the main painting loop. */
-		timer = new Timer(GUI_DELAY, this);
+		/* Begin the main painting loop, at the display's refresh rate. */
+		timer = new Timer(1000 / getFrameRate(), this);
 		timer.start();
 	}
 	
+	/* *********************************************************************//**
+	 * Returns the refresh rate of the default display, or GUI_FPS if it is not
+	 * known. Animation advances by the time between frames, so any rate keeps
+	 * the same pace.
+	 * ************************************************************************/
+	private static int getFrameRate() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return GUI_FPS;
+		}
+		int rate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+		return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? GUI_FPS : rate;
+	}
+	
 	////////////////////////////////////////////////////////////////////////////
 	// Animation
 	////////////////////////////////////////////////////////////////////////////
 	/* *********************************************************************//**
-	 * Paints the map, tiles, and butterfly;
+	 * Paints the map and butterfly. The map is blitted from its cached chunks,
+	 * and only the chunks within the clip are drawn. Their rows and columns 
+	 * are found from the clip by division, so a paint costs the same on any
+	 * size of map.
 	 * ************************************************************************/
 	protected @Override void paintComponent(Graphics g) {
 		super.paintComponent(g);
 		
-		/* Update the camera */
-		updateCamera(); 
-		if (lockOn) {
-			centerCamera(butterfly.getTopLeft());
+		/* Draw the chunks within both the camera and the clip. */
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
 		}
-		
-		/* Draw the tiles. */
-		int minRow = cameraTopLeft.y / sideLength;
-		int maxRow = cameraBottomRight.y / sideLength + 1;
-		int minCol = cameraTopLeft.x / sideLength;
-		int maxCol = cameraBottomRight.x / sideLength + 1;
-		for (int row = minRow; row < maxRow; row++) {
-			for (int col = minCol; col < maxCol ; col++) {
-				int modRow = Common.mod(row, rows);
-				int modCol = Common.mod(col, cols);
-				int xTopLeft = col * sideLength - cameraTopLeft.x;
-				int yTopLeft = row * sideLength - cameraTopLeft.y;
-				
-				tiles[modRow][modCol].draw(g, sideLength, xTopLeft, yTopLeft);
+		clip = clip.intersection(
+				new Rectangle(0, 0, getCameraWidth(), getCameraHeight()));
+		int span = chunkSize * sideLength;
+		for (int wrapY = 0; wrapY <= getMapHeight() && !clip.isEmpty(); 
+				wrapY += getMapHeight()) {
+			/* The rows of chunks of this copy of the map under the clip. */
+			int top = clip.y + cameraTopLeft.y - wrapY;
+			int firstRow = Math.max(0, Math.floorDiv(top, span));
+			int lastRow = Math.min(chunkRows - 1, 
+					Math.floorDiv(top + clip.height - 1, span));
+			for (int wrapX = 0; wrapX <= getMapWidth(); wrapX += getMapWidth()) {
+				/* The columns of chunks of this copy under the clip. */
+				int left = clip.x + cameraTopLeft.x - wrapX;
+				int firstCol = Math.max(0, Math.floorDiv(left, span));
+				int lastCol = Math.min(chunkCols - 1, 
+						Math.floorDiv(left + clip.width - 1, span));
+				for (int chunkRow = firstRow; chunkRow <= lastRow; chunkRow++) {
+					for (int chunkCol = firstCol; chunkCol <= lastCol; chunkCol++) {
+						int x = chunkCol * span + wrapX - cameraTopLeft.x;
+						int y = chunkRow * span + wrapY - cameraTopLeft.y;
+						if (clip.intersects(x, y, chunkWidth(chunkCol), 
+								chunkHeight(chunkRow))) {
+							g.drawImage(getChunk(chunkRow, chunkCol, true), 
+									x, y, null);
+						}
+					}
+				}
 			}
 		}
-				
-		/* Update and draw the butterfly. */
-		butterfly.moveAdd(60 / GUI_FPS); // GUI_FPS cannot be higher than 60!
+		
+		/* Draw the butterfly. */
 		if (inCamera(butterfly.getTopLeft())) {
 			butterfly.draw(g, (int)butterfly.xTopLeft - cameraTopLeft.x,
 					          (int)butterfly.yTopLeft - cameraTopLeft.y);
@@ -153,23 +286,358 @@ MouseWheelListener, ActionListener {
 		g.dispose();
 	}
 	
+	/* *********************************************************************//**
+	 * Advances the animation to the frame clock's current time, the single
+	 * clock every animation follows, and repaints what it changed: the whole
+	 * map if the camera moved, and otherwise only the tiles that changed and
+	 * the butterfly's old and new bounds. An idle map repaints nothing but the
+	 * flapping butterfly.
+	 * ************************************************************************/
+	private void animate() {
+		/* Begin the move the simulator asked for, if any, then update the
+		 * butterfly and camera. */
+		int speed;
+		Direction direction;
+		Point move;
+		synchronized (changedTiles) {
+			speed = pendingSpeed;
+			direction = pendingDirection;
+			move = pendingMove;
+			pendingMove = null;
+		}
+		if (move != null) {
+			butterfly.move(speed, direction, move.y, move.x, sideLength);
+		}
+		long now = System.nanoTime();
+		butterfly.tick(now);
+		updateCamera(); 
+		if (lockOn) {
+			centerCamera(butterfly.getTopLeft());
+		}
+		
+		/* Mark the tiles moved to visited, and render the newly visited ones,
+		 * or every one under an overlay, into their cached chunks. */
+		Point[] moved;
+		synchronized (changedTiles) {
+			moved = changedTiles.toArray(new Point[changedTiles.size()]);
+			changedTiles.clear();
+		}
+		List<Point> changed = new ArrayList<Point>(moved.length);
+		for (Point tile : moved) {
+			GUITile view = getView(tile.y * cols + tile.x);
+			view.lastEntered = Math.max(0, mapTiles[tile.y][tile.x].turnEntered);
+			latestTurn = Math.max(latestTurn, view.lastEntered);
+			if (view.visits++ == 0) {
+				changed.add(tile);
+				if (minimap != null) {
+					minimap.visit(tile.y, tile.x);
+				}
+			}
+			else if (overlay != Overlay.NONE) {
+				changed.add(tile);
+			}
+		}
+		
+		/* The recency of every tile changes with every turn, so its overlay is
+		 * redrawn once a second rather than every frame. */
+		if (overlay == Overlay.RECENCY && RECENCY_REFRESH <= now - recencyDrawn) {
+			recencyDrawn = now;
+			retiled = true;
+		}
+		if (updateFlowers()) {
+			retiled = true;
+		}
+		if (retiled) {
+			retiled = false;
+			chunks.clear();
+			repaint();
+		}
+		for (Point tile : changed) {
+			renderTile(tile.y, tile.x);
+		}
+		
+		/* A moved camera shifts everything. */
+		if (!cameraTopLeft.equals(paintedTopLeft) || 
+				!cameraBottomRight.equals(paintedBottomRight)) {
+			paintedTopLeft.setLocation(cameraTopLeft);
+			paintedBottomRight.setLocation(cameraBottomRight);
+			paintedButterfly = getButterflyBounds();
+			paintedFrame = butterfly.getFrame();
+			repaint();
+			if (minimap != null) {
+				minimap.repaint();
+			}
+			return;
+		}
+		
+		for (Point tile : changed) {
+			repaintMap(new Rectangle(tile.x * sideLength, tile.y * sideLength, 
+					sideLength, sideLength));
+		}
+		Rectangle bounds = getButterflyBounds();
+		Image frame = butterfly.getFrame();
+		if (!bounds.equals(paintedButterfly) || frame != paintedFrame) {
+			if (paintedButterfly != null) {
+				repaintMap(paintedButterfly);
+			}
+			repaintMap(bounds);
+			paintedButterfly = bounds;
+			paintedFrame = frame;
+		}
+	}
+	
+	/* *********************************************************************//**
+	 * Repaints every copy on screen, phantom ones included, of the map area
+	 * with bounds area, in map pixels.
+	 * ************************************************************************/
+	private void repaintMap(Rectangle area) {
+		for (int wrapY = 0; wrapY <= getMapHeight(); wrapY += getMapHeight()) {
+			for (int wrapX = 0; wrapX <= getMapWidth(); wrapX += getMapWidth()) {
+				int x = area.x + wrapX - cameraTopLeft.x;
+				int y = area.y + wrapY - cameraTopLeft.y;
+				if (x < getCameraWidth() && y < getCameraHeight() && 
+						0 < x + area.width && 0 < y + area.height) {
+					repaint(x, y, area.width, area.height);
+				}
+			}
+		}
+	}
+	
+	/* *********************************************************************//**
+	 * Returns the bounds of the butterfly's current frame, in map pixels.
+	 * ************************************************************************/
+	private Rectangle getButterflyBounds() {
+		Image frame = butterfly.getFrame();
+		return new Rectangle((int)butterfly.xTopLeft, (int)butterfly.yTopLeft,
+				frame.getWidth(null) + 1, frame.getHeight(null) + 1);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	// Chunks
+	////////////////////////////////////////////////////////////////////////////
+	/* *********************************************************************//**
+	 * Fits the chunks to the side length, dropping every cached chunk.
+	 * ************************************************************************/
+	private void updateChunks() {
+		chunkSize = Math.max(1, CHUNK_PIXELS / sideLength);
+		chunkRows = (rows + chunkSize - 1) / chunkSize;
+		chunkCols = (cols + chunkSize - 1) / chunkSize;
+		backgrounds.clear();
+		chunks.clear();
+	}
+	
+	/* *********************************************************************//**
+	 * Returns the image of chunk (chunkRow, chunkCol), rendering it first if it
+	 * is not cached and render is true. Returns null if it is not cached and
+	 * render is false.
+	 * ************************************************************************/
+	private BufferedImage getChunk(int chunkRow, int chunkCol, boolean render) {
+		int key = chunkRow * chunkCols + chunkCol;
+		BufferedImage chunk = chunks.get(key);
+		if (chunk != null || !render) {
+			return chunk;
+		}
+		
+		GraphicsConfiguration config = getGraphicsConfiguration();
+		int width = chunkWidth(chunkCol);
+		int height = chunkHeight(chunkRow);
+		chunk = config != null 
+				? config.createCompatibleImage(width, height) 
+				: new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics g = chunk.getGraphics();
+		int lastRow = Math.min(rows, (chunkRow + 1) * chunkSize);
+		int lastCol = Math.min(cols, (chunkCol + 1) * chunkSize);
+		for (int row = chunkRow * chunkSize; row < lastRow; row++) {
+			for (int col = chunkCol * chunkSize; col < lastCol; col++) {
+				int x = (col - chunkCol * chunkSize) * sideLength;
+				int y = (row - chunkRow * chunkSize) * sideLength;
+				drawTile(g, row, col, x, y);
+			}
+		}
+		g.dispose();
+		chunks.put(key, chunk);
+		return chunk;
+	}
+	
+	/* *********************************************************************//**
+	 * Draws tile (row, col) again into its chunk, if the chunk is cached.
+	 * ************************************************************************/
+	private void renderTile(int row, int col) {
+		BufferedImage chunk = getChunk(row / chunkSize, col / chunkSize, false);
+		if (chunk == null) {
+			return;
+		}
+		Graphics g = chunk.getGraphics();
+		int x = (col % chunkSize) * sideLength;
+		int y = (row % chunkSize) * sideLength;
+		drawTile(g, row, col, x, y);
+		g.dispose();
+	}
+	
+	/* *********************************************************************//**
+	 * Draws tile (row, col) and the overlay's heat of it at top left corner
+	 * (x, y), from the park's tile, the atlas, and the tile's view if it has
+	 * one.
+	 * ************************************************************************/
+	private void drawTile(Graphics g, int row, int col, int x, int y) {
+		String filename = mapTiles[row][col].tileFilename;
+		BufferedImage background = backgrounds.get(filename);
+		if (background == null) {
+			background = ImageAtlas.scaled(ImageAtlas.get(filename), sideLength);
+			backgrounds.put(filename, background);
+		}
+		int i = row * cols + col;
+		GUITile view = viewed.get(i) ? views.get(i) : null;
+		GUITile.draw(g, background, view, sideLength, x, y);
+		drawOverlay(g, view, i, x, y);
+	}
+	
+	/* *********************************************************************//**
+	 * Returns the view of tile row * cols + col, adding one if it has none.
+	 * ************************************************************************/
+	private GUITile getView(int i) {
+		GUITile view = viewed.get(i) ? views.get(i) : null;
+		if (view == null) {
+			view = new GUITile();
+			views.put(i, view);
+			viewed.set(i);
+		}
+		return view;
+	}
+	
+	/* *********************************************************************//**
+	 * Gives the flowers of the map, if it was retiled, to the views of their
+	 * tiles. Returns true if it was retiled.
+	 * ************************************************************************/
+	private boolean updateFlowers() {
+		HashMap<Integer, List<BufferedImage>> flowers = flowered;
+		if (flowers == null) {
+			return false;
+		}
+		flowered = null;
+		for (GUITile view : views.values()) {
+			view.flowers = Collections.emptyList();
+		}
+		for (Map.Entry<Integer, List<BufferedImage>> tile : flowers.entrySet()) {
+			getView(tile.getKey()).flowers = tile.getValue();
+		}
+		return true;
+	}
+	
+	/* *********************************************************************//**
+	 * Returns the images of the flowers of every flowered tile of tiles, keyed
+	 * by row * cols + col.
+	 * ************************************************************************/
+	private HashMap<Integer, List<BufferedImage>> flowers(Tile[][] tiles) {
+		HashMap<Integer, List<BufferedImage>> flowers = 
+				new HashMap<Integer, List<BufferedImage>>();
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				List<Flower> at = tiles[row][col].tileState.flowers;
+				if (!at.isEmpty()) {
+					flowers.put(row * cols + col, GUITile.load(at));
+				}
+			}
+		}
+		return flowers;
+	}
+	
+	/* *********************************************************************//**
+	 * Draws the overlay's heat of tile row * cols + col, with view view or
+	 * null, over it, at top left corner (x, y). Tiles without a value, such as
+	 * tiles never entered, are left clear.
+	 * ************************************************************************/
+	private void drawOverlay(Graphics g, GUITile view, int i, int x, int y) {
+		double heat;
+		switch (overlay) {
+		case VISITS:
+			if (view == null || view.visits == 0) {
+				return;
+			}
+			heat = Math.log(view.visits) / Math.log(MAX_VISITS);
+			break;
+		case RECENCY:
+			if (view == null || view.lastEntered < 0) {
+				return;
+			}
+			heat = 1 - Math.log1p(latestTurn - view.lastEntered) / 
+					Math.log1p(Math.max(1, latestTurn));
+			break;
+		case AROMA:
+			float[] aromas = this.aromas;
+			if (aromas == null || aromas[i] <= 0) {
+				return;
+			}
+			heat = Math.log(aromas[i] / Aroma.MIN_AROMA_INTENSITY) / 
+					Math.log(Flower.AROMA_INTENSITY / Aroma.MIN_AROMA_INTENSITY);
+			break;
+		default:
+			return;
+		}
+		heat = Math.max(0, Math.min(1, heat));
+		g.setColor(HEAT[(int) Math.round(heat * (HEAT.length - 1))]);
+		g.fillRect(x, y, sideLength, sideLength);
+	}
+	
+	/* *********************************************************************//**
+	 * Returns the intensity of the strongest aroma at every tile of tiles,
+	 * indexed by row * cols + col.
+	 * ************************************************************************/
+	private float[] aromas(Tile[][] tiles) {
+		float[] aromas = new float[rows * cols];
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				for (Aroma aroma : tiles[row][col].tileState.aromas) {
+					aromas[row * cols + col] = (float) Math.max(
+							aromas[row * cols + col], aroma.intensity);
+				}
+			}
+		}
+		return aromas;
+	}
+	
+	/* *********************************************************************//**
+	 * Lays heatmap overlay over the map, or none if it is Overlay.NONE.
+	 * ************************************************************************/
+	public void setOverlay(Overlay overlay) {
+		this.overlay = overlay;
+		aromas = overlay == Overlay.AROMA ? aromas(mapTiles) : null;
+		chunks.clear();
+		repaint();
+	}
+	
+	/* *********************************************************************//**
+	 * Returns the width, in pixels, of the chunks in column chunkCol. The last
+	 * column of chunks is narrower if chunkSize does not divide the map.
+	 * ************************************************************************/
+	private int chunkWidth(int chunkCol) {
+		return (Math.min(cols, (chunkCol + 1) * chunkSize) - 
+				chunkCol * chunkSize) * sideLength;
+	}
+	
+	/* *********************************************************************//**
+	 * Returns the height, in pixels, of the chunks in row chunkRow.
+	 * ************************************************************************/
+	private int chunkHeight(int chunkRow) {
+		return (Math.min(rows, (chunkRow + 1) * chunkSize) - 
+				chunkRow * chunkSize) * sideLength;
+	}
+	
 
     /***************************************************************************
      * Re-tile the map given by tiles. <br><br>
      * 
      * This usually takes place after the learning phase has been completed, 
-     * because tiles may have sprouted flowers, so each GUITile updates
-     * its flowers.
+     * because tiles may have sprouted flowers. Their images are collected
+     * here and given to the tiles' views on the event dispatch thread.
      * 
      * @param tiles The map.
      **************************************************************************/
 	public void retile(Tile[][] tiles) {
-		for (int row = 0; row < rows; row++) {
-			for (int col = 0; col < cols; col++) {
-				this.tiles[row][col].flowers = 
-						GUITile.load(tiles[row][col].tileState.flowers);
-			}
+		if (overlay == Overlay.AROMA) {
+			aromas = aromas(tiles);
 		}
+		flowered = flowers(tiles);
 	}
 	
 	////////////////////////////////////////////////////////////////////////////
@@ -264,6 +732,46 @@ MouseWheelListener, ActionListener {
 		return null;
 	}
 	
+	/* *********************************************************************//**
+	 * Centers the camera on tile (row, col).
+	 * ************************************************************************/
+	public void centerOn(int row, int col) {
+		centerCamera(new Point(col * sideLength + sideLength / 2, 
+				row * sideLength + sideLength / 2));
+	}
+	
+	/* *********************************************************************//**
+	 * Returns the camera in tiles: the column and row of its top left corner,
+	 * and the number of columns and rows it spans.
+	 * ************************************************************************/
+	public Rectangle2D.Double getCameraTiles() {
+		return new Rectangle2D.Double(
+				cameraTopLeft.x / (double) sideLength,
+				cameraTopLeft.y / (double) sideLength,
+				getCameraWidth() / (double) sideLength,
+				getCameraHeight() / (double) sideLength);
+	}
+	
+	/* *********************************************************************//**
+	 * Zooms to side length s, a power of two, keeping the point of the map at
+	 * (x, y) of the pane still.
+	 * ************************************************************************/
+	private void zoom(int s, int x, int y) {
+		if (s == sideLength) {
+			return;
+		}
+		float factor = s / (float) sideLength;
+		int anchorX = cameraTopLeft.x + x;
+		int anchorY = cameraTopLeft.y + y;
+		
+		sideLength = s;
+		updateChunks();
+		butterfly.rescale(s, getMapWidth(), getMapHeight());
+		updateCamera();
+		moveCamera((int) (anchorX * factor) - x, (int) (anchorY * factor) - y);
+		repaint();
+	}
+	
 	/* *********************************************************************//**
 	 * Returns the current width of the camera, in pixels.
 	 * ************************************************************************/
@@ -281,6 +789,19 @@ MouseWheelListener, ActionListener {
 	////////////////////////////////////////////////////////////////////////////
 	// Helper Methods 
 	////////////////////////////////////////////////////////////////////////////
+	/* *********************************************************************//**
+	 * Makes minimap the minimap of this map, and shows it the tiles visited
+	 * so far.
+	 * ************************************************************************/
+	public void setMinimap(GUIMinimap minimap) {
+		this.minimap = minimap;
+		for (Map.Entry<Integer, GUITile> tile : views.entrySet()) {
+			if (tile.getValue().visits > 0) {
+				minimap.visit(tile.getKey() / cols, tile.getKey() % cols);
+			}
+		}
+	}
+	
 	/* *********************************************************************//**
 	 * Updates the butterfly's fpm.
 	 * ************************************************************************/
@@ -289,15 +810,16 @@ MouseWheelListener, ActionListener {
 	}
 	
 	/* *********************************************************************//**
-	 * Begins the move process for a butterfly.
+	 * Begins the move process for a butterfly. The move is queued for the
+	 * next frame, which begins it on the EDT.
 	 * ************************************************************************/
 	public void move(int s, Direction d, int toRow, int toCol) {
-		if (!tiles[toRow][toCol].visited) {
-			GUITile tile = tiles[toRow][toCol];
-			tile.visited = true;
-			Common.change_brightness(tile.cachedImage, 0.8f);
+		synchronized (changedTiles) {
+			changedTiles.add(new Point(toCol, toRow));
+			pendingSpeed = s;
+			pendingDirection = d;
+			pendingMove = new Point(toCol, toRow);
 		}
-		butterfly.move(s, d, toRow, toCol, sideLength);
 	}
 	
 	/* *********************************************************************//**
@@ -401,11 +923,15 @@ MouseWheelListener, ActionListener {
 	}
 	
 	/* *********************************************************************//**
-	 * TODO
+	 * Scrolling the mouse wheel away zooms in and scrolling it towards you
+	 * zooms out, halving or doubling the side length of the tiles for every 
+	 * notch. The point under the mouse stays still.
 	 * ************************************************************************/
 	public @Override void mouseWheelMoved(MouseWheelEvent e) {
-		// TODO: zoom; make sure to update the butterfly's map width and 
-		// map height!
+		int notches = Math.max(-6, Math.min(6, e.getWheelRotation()));
+		int s = notches < 0 ? sideLength << -notches : sideLength >> notches;
+		s = Math.max(MIN_SIDE_LENGTH, Math.min(MAX_SIDE_LENGTH, s));
+		zoom(s, e.getX(), e.getY());
 	}
 
 	/* *********************************************************************//**
@@ -413,6 +939,6 @@ MouseWheelListener, ActionListener {
 	 * the GUI.
 	 * ************************************************************************/
 	public @Override void actionPerformed(ActionEvent e) {
-		repaint();
+		animate();
 	}
 }
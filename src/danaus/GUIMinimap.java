@@ -0,0 +1,185 @@
+package danaus;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+
+/* *************************************************************************//**
+ * An instance is the minimap in the east of the GUI: the whole map drawn at
+ * most MAX_SIZE pixels a side, with the camera outlined on it. Clicking the
+ * minimap centers the camera on the tile clicked. <br><br>
+ *
+ * On large maps every pixel stands for a square block of tiles, and its color
+ * is the average color of their images. The colors and the number of tiles and
+ * visited tiles of every block are kept in primitive arrays, so visiting a tile
+ * recolors a single pixel and the map's tiles are never read again.
+ * ****************************************************************************/
+@SuppressWarnings("serial")
+public class GUIMinimap extends JPanel implements MouseListener {
+	/** The most pixels along a side of the minimap. */
+	private static int MAX_SIZE = 200;
+	/** The brightness of fully visited blocks, as for visited tiles. */
+	private static float VISITED_BRIGHTNESS = 0.8f;
+	/** The color of the outline of the camera. */
+	private static Color CAMERA_COLOR = Color.RED;
+
+	/** The map whose camera is outlined and moved. */
+	private GUIMap map;
+
+	/** The total rows and columns in the map. */
+	private int rows;
+	private int cols;
+	/** The number of tiles along a side of the block of every pixel, and the
+	 * number of pixels the minimap is magnified by on small maps. */
+	private int block;
+	private int zoom;
+
+	/** The minimap, a pixel per block. */
+	private BufferedImage image;
+	/** The average color of every block unvisited, the number of its tiles,
+	 * and the number of them visited, indexed by pixel y * width + x. */
+	private int[] colors;
+	private int[] tiles;
+	private int[] visits;
+
+	/* *********************************************************************//**
+	 * Constructor: the minimap of tiles, showing and moving the camera of map.
+	 * ************************************************************************/
+	GUIMinimap(GUIMap map, Tile[][] tiles) {
+		this.map = map;
+		rows = tiles.length;
+		cols = tiles[0].length;
+		block = Math.max(1, (Math.max(rows, cols) + MAX_SIZE - 1) / MAX_SIZE);
+		int width = (cols + block - 1) / block;
+		int height = (rows + block - 1) / block;
+		zoom = Math.max(1, MAX_SIZE / Math.max(width, height));
+		initImage(tiles, width, height);
+		initGUI();
+	}
+
+	/* *********************************************************************//**
+	 * Initializes the instance.
+	 * ************************************************************************/
+	private void initGUI() {
+		setBackground(GUI.BACKGROUND_COLOR);
+		setBorder(new TitledBorder("Minimap"));
+		setToolTipText("Click to move the camera.");
+		Insets insets = getInsets();
+		setPreferredSize(new Dimension(
+				image.getWidth() * zoom + insets.left + insets.right,
+				image.getHeight() * zoom + insets.top + insets.bottom));
+		addMouseListener(this);
+	}
+
+	/* *********************************************************************//**
+	 * Averages the colors of tiles into blocks, each a pixel of an image width
+	 * by height pixels. The color of a tile is its image shrunk to one pixel.
+	 * ************************************************************************/
+	private void initImage(Tile[][] tiles, int width, int height) {
+		long[] red = new long[width * height];
+		long[] green = new long[width * height];
+		long[] blue = new long[width * height];
+		this.tiles = new int[width * height];
+		visits = new int[width * height];
+
+		HashMap<String, Integer> palette = new HashMap<String, Integer>();
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				String filename = tiles[row][col].tileFilename;
+				Integer rgb = palette.get(filename);
+				if (rgb == null) {
+					rgb = ImageAtlas.scaled(ImageAtlas.get(filename), 1).getRGB(0, 0);
+					palette.put(filename, rgb);
+				}
+				int pixel = (row / block) * width + col / block;
+				red[pixel] += (rgb >> 16) & 0xff;
+				green[pixel] += (rgb >> 8) & 0xff;
+				blue[pixel] += rgb & 0xff;
+				this.tiles[pixel]++;
+			}
+		}
+
+		colors = new int[width * height];
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int pixel = 0; pixel < colors.length; pixel++) {
+			int n = this.tiles[pixel];
+			colors[pixel] = (int) (red[pixel] / n) << 16 |
+					(int) (green[pixel] / n) << 8 | (int) (blue[pixel] / n);
+			image.setRGB(pixel % width, pixel / width, colors[pixel]);
+		}
+	}
+
+	/* *********************************************************************//**
+	 * Darkens the block of tile (row, col) by its share of visited tiles, after
+	 * the tile was visited for the first time.
+	 * ************************************************************************/
+	public void visit(int row, int col) {
+		int x = col / block;
+		int y = row / block;
+		int pixel = y * image.getWidth() + x;
+		visits[pixel]++;
+
+		float scale = 1 - (1 - VISITED_BRIGHTNESS) * visits[pixel] / tiles[pixel];
+		int rgb = colors[pixel];
+		image.setRGB(x, y,
+				(int) (((rgb >> 16) & 0xff) * scale) << 16 |
+				(int) (((rgb >> 8) & 0xff) * scale) << 8 |
+				(int) ((rgb & 0xff) * scale));
+
+		Insets insets = getInsets();
+		repaint(insets.left + x * zoom, insets.top + y * zoom, zoom, zoom);
+	}
+
+	/* *********************************************************************//**
+	 * Paints the minimap and outlines the camera, wrapping around its edges.
+	 * ************************************************************************/
+	protected @Override void paintComponent(Graphics g) {
+		super.paintComponent(g);
+
+		Insets insets = getInsets();
+		int width = image.getWidth() * zoom;
+		int height = image.getHeight() * zoom;
+		g.drawImage(image, insets.left, insets.top, width, height, null);
+
+		/* The camera, in minimap pixels. */
+		Rectangle2D.Double camera = map.getCameraTiles();
+		double scale = zoom / (double) block;
+		int x = (int) (camera.x * scale);
+		int y = (int) (camera.y * scale);
+		int w = Math.max(1, (int) (camera.width * scale));
+		int h = Math.max(1, (int) (camera.height * scale));
+
+		Graphics clipped = g.create(insets.left, insets.top, width, height);
+		clipped.setColor(CAMERA_COLOR);
+		for (int dx = 0; dx <= width; dx += width) {
+			for (int dy = 0; dy <= height; dy += height) {
+				clipped.drawRect(x - dx, y - dy, w - 1, h - 1);
+			}
+		}
+		clipped.dispose();
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Callbacks
+	////////////////////////////////////////////////////////////////////////////
+	/* *********************************************************************//**
+	 * Clicking the minimap centers the camera on the tile clicked.
+	 * ************************************************************************/
+	public @Override void mouseClicked(MouseEvent e) {
+		Insets insets = getInsets();
+		int col = (e.getX() - insets.left) / zoom * block + block / 2;
+		int row = (e.getY() - insets.top) / zoom * block + block / 2;
+		if (0 <= e.getX() - insets.left && 0 <= e.getY() - insets.top) {
+			map.centerOn(Math.min(row, rows - 1), Math.min(col, cols - 1));
+		}
+	}
+
+	public @Override void mousePressed(MouseEvent e) {}
+	public @Override void mouseReleased(MouseEvent e) {}
+	public @Override void mouseEntered(MouseEvent e) {}
+	public @Override void mouseExited(MouseEvent e) {}
+}
@@ -1,16 +1,26 @@
 package danaus;
 
 import java.awt.*;
+import java.awt.event.*;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 
 /* *************************************************************************//**
  * An instance represents the box on the right side of the GUI, which displays
  * information about the game. For more detail into the fields of this class,
- * refer to ParkState. 
+ * refer to ParkState. <br><br>
+ *
+ * The simulation publishes its statistics as an immutable Snapshot on every
+ * move, which costs it one small allocation and a volatile write. A timer on
+ * the event dispatch thread samples the latest snapshot REFRESH_RATE times a 
+ * second and sets the text of the labels whose values changed, so the labels
+ * are only ever touched by Swing's own thread.
  * ****************************************************************************/
 @SuppressWarnings("serial")
-public class GUIState extends JPanel {
+public class GUIState extends JPanel implements ActionListener {
+	/** The number of times a second the labels are refreshed. */
+	private static int REFRESH_RATE = 10;
+	
 	private StateLabel turn;
 	private StateLabel slowTurns;
 	private StateLabel location;
@@ -22,11 +32,17 @@ public class GUIState extends JPanel {
 	private StateLabel cliffCollisions;
 	private StateLabel waterCollisions;
 	
+	/** The statistics most recently published by the simulation. */
+	private volatile Snapshot latest;
+	/** The statistics the labels show, or null before the first refresh. */
+	private Snapshot shown;
+	
 	/* *********************************************************************//**
 	 * Constructor: an intialized GUIState. 
 	 * ************************************************************************/
 	GUIState() {
 		initGUI();
+		new Timer(1000 / REFRESH_RATE, this).start();
 	}
 	
 	/* *********************************************************************//**
@@ -49,7 +65,7 @@ public class GUIState extends JPanel {
 		location = new StateLabel("(0, 0)");
 		power = new StateLabel("0");
 		exploredTiles = new StateLabel("0/0");
-		foundFlowers = new StateLabel("0");
+		foundFlowers = new StateLabel("0/0");
 		powerSpent = new StateLabel("0");
 		powerConsumed = new StateLabel("0");
 		cliffCollisions = new StateLabel("0");
@@ -98,22 +114,103 @@ public class GUIState extends JPanel {
 	}
 	
 	/* *********************************************************************//**
-	 * Update the simulation's statistics in state, using butterfly bfly.
+	 * Update the simulation's statistics in state, using butterfly bfly. The 
+	 * labels show them at the next refresh. Safe to call from any thread.
 	 * ************************************************************************/
 	public void updateState(ParkState state, AbstractButterfly bfly) {
-		String reqFlowerNum = state.requiredFlowers == null ?
-				"0" : String.valueOf(state.requiredFlowers.size());
+		latest = new Snapshot(state, bfly);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	// Callbacks
+	////////////////////////////////////////////////////////////////////////////
+	/* *********************************************************************//**
+	 * Sets the text of the labels whose values changed since the last refresh.
+	 * ************************************************************************/
+	public @Override void actionPerformed(ActionEvent e) {
+		Snapshot s = latest;
+		if (s == null || s == shown) {
+			return;
+		}
+		Snapshot old = shown == null ? new Snapshot() : shown;
 		
-		turn.setText(String.valueOf(state.turn));
-		slowTurns.setText(String.valueOf(state.slowTurns));
-		location.setText(bfly.location.toString());
-		power.setText(String.valueOf(bfly.getPower().getPower()));
-		exploredTiles.setText(String.valueOf("" + state.exploredTiles + "/" + state.numTiles));
-		foundFlowers.setText("" + state.foundFlowers.size() + "/" + reqFlowerNum);
-		powerSpent.setText(String.valueOf(state.powerSpent));
-		powerConsumed.setText(String.valueOf(state.powerConsumed));
-		cliffCollisions.setText(String.valueOf(state.cliffCollisions));
-		waterCollisions.setText(String.valueOf(state.waterCollisions));
+		if (s.turn != old.turn) {
+			turn.setText(String.valueOf(s.turn));
+		}
+		if (s.slowTurns != old.slowTurns) {
+			slowTurns.setText(String.valueOf(s.slowTurns));
+		}
+		if (s.row != old.row || s.col != old.col) {
+			location.setText("(" + s.row + ", " + s.col + ")");
+		}
+		if (s.power != old.power) {
+			power.setText(String.valueOf(s.power));
+		}
+		if (s.exploredTiles != old.exploredTiles || s.numTiles != old.numTiles) {
+			exploredTiles.setText(s.exploredTiles + "/" + s.numTiles);
+		}
+		if (s.foundFlowers != old.foundFlowers || 
+				s.requiredFlowers != old.requiredFlowers) {
+			foundFlowers.setText(s.foundFlowers + "/" + s.requiredFlowers);
+		}
+		if (s.powerSpent != old.powerSpent) {
+			powerSpent.setText(String.valueOf(s.powerSpent));
+		}
+		if (s.powerConsumed != old.powerConsumed) {
+			powerConsumed.setText(String.valueOf(s.powerConsumed));
+		}
+		if (s.cliffCollisions != old.cliffCollisions) {
+			cliffCollisions.setText(String.valueOf(s.cliffCollisions));
+		}
+		if (s.waterCollisions != old.waterCollisions) {
+			waterCollisions.setText(String.valueOf(s.waterCollisions));
+		}
+		shown = s;
+	}
+	
+	/* *********************************************************************//**
+	 * An immutable copy of the statistics shown, taken on the simulation's
+	 * thread so the event dispatch thread never reads the park.
+	 * ************************************************************************/
+	private static class Snapshot {
+		final long turn;
+		final long slowTurns;
+		final int row;
+		final int col;
+		final int power;
+		final long exploredTiles;
+		final long numTiles;
+		final int foundFlowers;
+		final int requiredFlowers;
+		final long powerSpent;
+		final long powerConsumed;
+		final long cliffCollisions;
+		final long waterCollisions;
+		
+		/** Constructor: the statistics the labels show initially. */
+		Snapshot() {
+			turn = slowTurns = exploredTiles = numTiles = 0;
+			powerSpent = powerConsumed = cliffCollisions = waterCollisions = 0;
+			row = col = power = foundFlowers = requiredFlowers = 0;
+		}
+		
+		/** Constructor: the statistics in state, using butterfly bfly. */
+		Snapshot(ParkState state, AbstractButterfly bfly) {
+			turn = state.turn.sum();
+			slowTurns = state.slowTurns.sum();
+			row = bfly.location.row;
+			col = bfly.location.col;
+			power = bfly.getPower().getPower();
+			exploredTiles = state.exploredTiles.sum();
+			numTiles = state.numTiles.sum();
+			foundFlowers = state.foundFlowers.size();
+			requiredFlowers = state.requiredFlowers == null ? 
+					0 : state.requiredFlowers.size();
+			powerSpent = state.powerSpent.sum();
+			powerConsumed = state.powerConsumed.sum();
+			cliffCollisions = state.cliffCollisions.sum();
+			waterCollisions = state.waterCollisions.sum();
+		}
 	}
 	
 	/* *********************************************************************//**
@@ -101,7 +101,7 @@ public class GUITileInfo extends JPanel{
 		flowers.setText(tile.tileState.toStringFlowers());
 		turnEntered.setText(String.valueOf(tile.turnEntered));
 		
-		BufferedImage back = Common.load_image(tile.tileFilename);
+		BufferedImage back = ImageAtlas.get(tile.tileFilename);
 		if (tile.tileState.flowers.isEmpty()) {
 			image.setIcon(new ImageIcon(back));
 			return;
@@ -109,7 +109,7 @@ public class GUITileInfo extends JPanel{
 		
 		Randomer rand = new Randomer();
 		String filename = rand.nextElement(tile.tileState.flowers).imageFilename;
-		BufferedImage flower = Common.load_image(filename);
+		BufferedImage flower = ImageAtlas.get(filename);
 		BufferedImage merged = new BufferedImage(back.getWidth(), back.getHeight(), 
 				BufferedImage.TYPE_INT_ARGB);
 		Graphics g = merged.getGraphics();
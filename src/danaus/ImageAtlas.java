@@ -0,0 +1,246 @@
+package danaus;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/* *************************************************************************//**
+ * The images of the GUI, each decoded from its PNG once and shared by every
+ * tile, flower, and butterfly that draws it. Images are keyed by their filename
+ * relative to Danaus' root directory, as for Common.load_image, e.g.
+ * "res/tiles/land.png". <br><br>
+ *
+ * preload decodes every PNG under res/ in parallel when the GUI starts. An
+ * image that was not preloaded is decoded the first time it is requested.
+ * Images are converted to the format of the screen, so drawing them needs no
+ * conversion. <br><br>
+ *
+ * scaled returns an image scaled to another tile side length. Side lengths are
+ * powers of two, and every image keeps a mipmap of the sizes it was scaled to:
+ * each smaller size is averaged down from the one twice its size once, so no
+ * image is ever scaled while drawing. <br><br>
+ *
+ * The images are shared, so they must never be drawn on. Draw on a copy.
+ * ****************************************************************************/
+public class ImageAtlas {
+	/** The side length of the images of tiles, flowers, and butterflies. */
+	public static int SIDE_LENGTH = 32;
+	
+	/** The directory of the images preloaded. */
+	private static String RESOURCES_DIR = "res/";
+
+	/** The absolute path of Danaus' root directory, found once. */
+	private static String root;
+
+	/** The decoded images, by filename. */
+	private static final ConcurrentHashMap<String, BufferedImage> images =
+			new ConcurrentHashMap<String, BufferedImage>();
+
+	/** The mipmap of every image scaled so far: the image scaled to side
+	 * length 2^i at index i, or null if it was never asked for. */
+	private static final ConcurrentHashMap<BufferedImage, BufferedImage[]> 
+			mipmaps = new ConcurrentHashMap<BufferedImage, BufferedImage[]>();
+
+	private ImageAtlas() {}
+
+	/* *********************************************************************//**
+	 * Returns the shared image of file filename, decoding it first if it has
+	 * not been yet. Exits with error 1 if it cannot be decoded.
+	 *
+	 * @param filename The filename relative to Danaus' root directory.
+	 * @return The image. Never draw on it.
+	 * ************************************************************************/
+	public static BufferedImage get(String filename) {
+		BufferedImage image = images.get(filename);
+		if (image == null) {
+			image = decode(filename);
+			BufferedImage decoded = images.putIfAbsent(filename, image);
+			if (decoded != null) {
+				image = decoded;
+			}
+		}
+		return image;
+	}
+
+	/* *********************************************************************//**
+	 * Returns image, an image of the atlas, scaled from SIDE_LENGTH to side
+	 * length s. The scaled image is made the first time it is requested.
+	 *
+	 * @param image An image returned by get.
+	 * @param s The side length, a power of two.
+	 * @return The scaled image. Never draw on it.
+	 * ************************************************************************/
+	public static BufferedImage scaled(BufferedImage image, int s) {
+		if (s == SIDE_LENGTH) {
+			return image;
+		}
+		BufferedImage[] mipmap = mipmaps.get(image);
+		if (mipmap == null) {
+			mipmap = new BufferedImage[Integer.SIZE - 1];
+			BufferedImage[] made = mipmaps.putIfAbsent(image, mipmap);
+			if (made != null) {
+				mipmap = made;
+			}
+		}
+
+		int level = Integer.numberOfTrailingZeros(s);
+		synchronized (mipmap) {
+			if (mipmap[level] == null) {
+				mipmap[level] = s < SIDE_LENGTH 
+						? halve(scaled(image, s * 2))
+						: enlarge(image, s / SIDE_LENGTH);
+			}
+			return mipmap[level];
+		}
+	}
+
+	/* *********************************************************************//**
+	 * Returns image at half its size, every pixel the average of the four it
+	 * covers.
+	 * ************************************************************************/
+	private static BufferedImage halve(BufferedImage image) {
+		BufferedImage half = create(Math.max(1, image.getWidth() / 2),
+				Math.max(1, image.getHeight() / 2), image.getTransparency());
+		Graphics2D g = half.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, 0, 0, half.getWidth(), half.getHeight(), null);
+		g.dispose();
+		return half;
+	}
+
+	/* *********************************************************************//**
+	 * Returns image enlarged factor times, every pixel a block of pixels.
+	 * ************************************************************************/
+	private static BufferedImage enlarge(BufferedImage image, int factor) {
+		BufferedImage large = create(image.getWidth() * factor,
+				image.getHeight() * factor, image.getTransparency());
+		Graphics2D g = large.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, 
+				RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		g.drawImage(image, 0, 0, large.getWidth(), large.getHeight(), null);
+		g.dispose();
+		return large;
+	}
+
+	/* *********************************************************************//**
+	 * Decodes every PNG under res/, on a thread per core with the calling
+	 * thread working too, and returns once all of them are decoded.
+	 * ************************************************************************/
+	public static void preload() {
+		final List<String> filenames = new ArrayList<String>();
+		list(new File(root() + RESOURCES_DIR), RESOURCES_DIR, filenames);
+
+		final AtomicInteger next = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			public @Override void run() {
+				int i;
+				while ((i = next.getAndIncrement()) < filenames.size()) {
+					get(filenames.get(i));
+				}
+			}
+		};
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		Thread[] pool = new Thread[Math.max(threads - 1, 0)];
+		for (int t = 0; t < pool.length; t++) {
+			pool[t] = new Thread(worker, "image-atlas-" + t);
+			pool[t].start();
+		}
+		worker.run();
+		for (Thread thread : pool) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/* *********************************************************************//**
+	 * Adds to filenames the filename of every PNG in directory dir and its
+	 * subdirectories. The filenames start with prefix, the filename of dir.
+	 * ************************************************************************/
+	private static void list(File dir, String prefix, List<String> filenames) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				list(file, prefix + file.getName() + "/", filenames);
+			}
+			else if (file.getName().endsWith(".png")) {
+				filenames.add(prefix + file.getName());
+			}
+		}
+	}
+
+	/* *********************************************************************//**
+	 * Returns the image of file filename, decoded and converted to the format
+	 * of the screen. Exits with error 1 if it cannot be decoded.
+	 * ************************************************************************/
+	private static BufferedImage decode(String filename) {
+		BufferedImage image = null;
+		try {
+			image = ImageIO.read(new File(root() + filename));
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (image == null) {
+			Debugger.ERROR("Could not load image " + filename);
+			System.exit(1);
+		}
+
+		if (GraphicsEnvironment.isHeadless() || image.getColorModel().equals(
+				config().getColorModel(image.getTransparency()))) {
+			return image;
+		}
+		BufferedImage compatible = create(
+				image.getWidth(), image.getHeight(), image.getTransparency());
+		Graphics g = compatible.getGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return compatible;
+	}
+
+	/* *********************************************************************//**
+	 * Returns a new image width by height pixels with transparency 
+	 * transparency, in the format of the screen if there is one.
+	 * ************************************************************************/
+	private static BufferedImage create(int width, int height, 
+			int transparency) {
+		if (GraphicsEnvironment.isHeadless()) {
+			return new BufferedImage(width, height, 
+					transparency == Transparency.OPAQUE 
+					? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		}
+		return config().createCompatibleImage(width, height, transparency);
+	}
+
+	/* *********************************************************************//**
+	 * Returns the graphics configuration of the default screen.
+	 * ************************************************************************/
+	private static GraphicsConfiguration config() {
+		return GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getDefaultScreenDevice().getDefaultConfiguration();
+	}
+
+	/* *********************************************************************//**
+	 * Returns the absolute path of Danaus' root directory.
+	 * ************************************************************************/
+	private static synchronized String root() {
+		if (root == null) {
+			root = Common.absolute_path() + "../";
+		}
+		return root;
+	}
+}
@@ -4,9 +4,9 @@ package danaus;
 public class Land extends Tile {
 	/* Tile specific constants. @see main.Tile */
 	private static final String NAME = "land";
-	private static final boolean FLYABLE = true; 
-	private static final int SLOW_DOWN = 0;
-	private static final int POWER_COST = 0;
+	private static final boolean FLYABLE = TileType.LAND.flyable; 
+	private static final int SLOW_DOWN = TileType.LAND.slowDown;
+	private static final int POWER_COST = TileType.LAND.powerCost;
 				
 	/** Constructor: a flyable land instance with skin skin,
 	 * slow-down 0, power-cost 0, tile state tileState.
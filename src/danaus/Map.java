@@ -46,8 +46,13 @@ class Map {
 	/** The height of the map (in rows). */
 	private int height;
 	
-    /** The butterfly on the map, or null if no butterfly is on the map. */
+    /** The butterfly on the map, or null if no butterfly is on the map. When
+     * several butterflies fly concurrently, this is the first of them: the
+     * one the GUI follows. */
 	AbstractButterfly butterfly;
+	/** Every butterfly on the map, butterfly first. Unless the simulation is
+	 * concurrent, this holds butterfly alone. */
+	List<AbstractButterfly> butterflies;
 	/** The butterfly's initial position. This is used for random butterfly
 	 * generation. */
 	private Position butterflyStart;
@@ -213,6 +218,16 @@ class Map {
 	
 	/** All possible directions. */
 	private static final Direction[] DIRECTIONS = Direction.values();
+	
+	/** The number of locks guarding tile occupancy. Must be a power of two. */
+	private static final int TILE_LOCK_STRIPES = 64;
+	
+	/** Locks guarding the occupancy of tiles when several butterflies fly
+	 * concurrently. The stripe of a tile is picked by hashing its position. A 
+	 * butterfly moving between two tiles takes both locks, lower index first,
+	 * so two butterflies crossing paths cannot deadlock.
+	 * @see danaus.Map#tileStripe(Position) */
+	private final Object[] tileLocks;
 
     /** The seed used by rand. This seed can be printed and reused to replicate
      * random maps. */
@@ -223,6 +238,13 @@ class Map {
      * then the maps generated from them are also equal. */
     Randomer rand; 
 
+	{
+		tileLocks = new Object[TILE_LOCK_STRIPES];
+		for (int i = 0; i < TILE_LOCK_STRIPES; i++) {
+			tileLocks[i] = new Object();
+		}
+	}
+	
 	static {
 		/* Flower files range from flower_1 to flower_100 */
 		FLOWER_NUMBERS = new Integer[NUMBER_FLOWERS];
@@ -237,9 +259,17 @@ class Map {
 	/** Constructor: a fully randomized map instance in park. No values are 
      * read from the user. */
 	Map(Park park) {
+		this(park, 0, 0);
+	}
+	
+	/** Constructor: a randomized map instance in park with height rows and
+	 * width columns. If either is 0, the map is randomly sized. */
+	Map(Park park, int height, int width) {
 		Debugger.DEBUG("Constructing randomly generated map...");
 		
 		this.park = park;
+		this.height = height;
+		this.width = width;
 		initInitialSettings();
 		initRandom();
 		initNormalize();
@@ -297,7 +327,7 @@ class Map {
 			seed = new Randomer().nextInt();
 		}
 		rand = new Randomer(seed);
-		Debugger.DEBUG("Seed is " + seed);
+		Debugger.DEBUG(() -> "Seed is " + seed);
 		
 		skin = "land";
 		 
@@ -549,7 +579,7 @@ class Map {
 				tileState = new TileState(new Position(row, col).toLocation(), light, wind, flowers);
 				tiles[row][col] = parseTile(fields, tileState);
 				if (tiles[row][col].flyable) {
-					park.state.numTiles++;
+					park.state.numTiles.increment();
 				}
 			}
 		}
@@ -820,9 +850,13 @@ class Map {
 	private void initRandomTiles() {
 		Debugger.DEBUG("Initializing Random Tiles...");
 		
-		/* Randomly size the map. */
-		height = rand.nextInt(MIN_HEIGHT, MAX_HEIGHT);
-		width  = rand.nextInt(MIN_WIDTH, MAX_WIDTH);
+		/* Randomly size the map, unless a size was requested. */
+		if (height == 0 || width == 0) {
+			height = rand.nextInt(MIN_HEIGHT, MAX_HEIGHT);
+			width  = rand.nextInt(MIN_WIDTH, MAX_WIDTH);
+		}
+		Flight.GenerationEvent stage = 
+				Flight.beginStage("initRandomTiles", height, width);
 		tiles = new Tile[height][width];
 		
 		/* The likelihood of choosing one of EAST or WEST to infect instead of
@@ -880,7 +914,7 @@ class Map {
 		freeFrontier.add(root);
 		set(root, new Land(skin, randomTileState(root.toLocation())));
 		numLand++;
-		park.state.numTiles++;
+		park.state.numTiles.increment();
 				
 		while (!(freeFrontier.isEmpty() && crampedFrontier.isEmpty()) && numLand < maxLand) {
 			/* Select either from free frontier or the cramped frontier. */
@@ -942,11 +976,11 @@ class Map {
 			else if (type <= FOREST_SEED_PROBABILITY) {
 				set(infected, new Forest(skin, randomTileState(infected.toLocation())));
 				forests.add(infected);
-				park.state.numTiles++;
+				park.state.numTiles.increment();
 			}
 			else {
 				set(infected, new Land(skin, randomTileState(infected.toLocation())));
-				park.state.numTiles++;
+				park.state.numTiles.increment();
 			}
 			
 			/* Flower the tile if it's not a cliff*/
@@ -974,8 +1008,10 @@ class Map {
 			sketch();
 		}	
 				
-		/* Populate the map with appropriate tiles **/
+		/* Populate the map with appropriate tiles. Forests and cliffs grow in
+		 * stages of their own, so they are not counted in this one. **/
 		nullToWater();
+		Flight.endStage(stage);
 		growForests(forests);
 		growCliffs(cliffs);
 	}
@@ -1002,10 +1038,14 @@ class Map {
 	 */
 	private void growCliffs(LinkedList<Position> cliffs) {
 		Debugger.DEBUG("Growing Cliffs...");
+		Flight.GenerationEvent stage = 
+				Flight.beginStage("growCliffs", height, width);
 		
 		for (Position seed : cliffs) {
 			growCliff(seed);
 		}
+		
+		Flight.endStage(stage);
 	}
 	
 	/**
@@ -1035,7 +1075,7 @@ class Map {
 			Tile.copy(cliff, at(cliffPos));
 			set(cliffPos, cliff);
 			neighbors = getCliffCandidates(cliffPos, direction);
-			park.state.numTiles--;
+			park.state.numTiles.decrement();
 			sketch();
 		} 
 	}
@@ -1094,11 +1134,15 @@ class Map {
 	 */
 	private void growForests(LinkedList<Position> forests) {
 		Debugger.DEBUG("Growing Forests...");
+		Flight.GenerationEvent stage = 
+				Flight.beginStage("growForests", height, width);
 		
 		numForests = forests.size();
 		while (!forests.isEmpty() && numForests < MAX_FORESTS) {
 			growForest(forests.pollFirst(), forests);			
 		}
+		
+		Flight.endStage(stage);
 	}
 	
 	/**
@@ -1286,12 +1330,16 @@ class Map {
 	 */
 	private void spreadAromas(List<Position> runningFlowerPositions2) {
 		Debugger.DEBUG("Spreading Aroma...");
+		Flight.GenerationEvent stage = 
+				Flight.beginStage("spreadAromas", height, width);
 		
 		for (Position flowerPos : runningFlowerPositions2) {
 			for (Flower flower : at(flowerPos).tileState.flowers) {
 				spreadAroma(flower, flowerPos);
 			}
 		}
+		
+		Flight.endStage(stage);
 	}
 	
 	/**
@@ -1343,7 +1391,31 @@ class Map {
 	}
 	
 	/**
-	 * Initializes the map's butterfly at it's beginning location.
+	 * Clears every aroma on the map and spreads the aromas of the learning 
+	 * flowers again. The result is identical to the aromas spread during map
+	 * generation. This is used by danaus.Benchmark.
+	 */
+	void respreadAromas() {
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				tiles[row][col].tileState.aromas.clear();
+			}
+		}
+		spreadAromas(learningFlowerPositions);
+	}
+	
+	/**
+	 * Spreads the wind of the learning flowers again. This is used by 
+	 * danaus.Benchmark.
+	 */
+	void respreadWind() {
+		spreadWind(learningFlowers);
+	}
+	
+	/**
+	 * Initializes the map's butterfly at it's beginning location. If the 
+	 * simulation is concurrent, a butterfly is initialized for every class
+	 * named on the command line, and they all begin at the same location.
 	 * 
 	 * Precondition: The butterfly's starting position has already been
 	 * determined and initialized. This is true for maps generated from map
@@ -1351,18 +1423,28 @@ class Map {
 	 */
 	private void initButterfly() {
 		Debugger.DEBUG("Initializing Butterfly...");
-		try {
-			Class<?> butterflyClass = Class.forName(Simulator.CLASS_NAMES.get(0));
-			butterfly = (AbstractButterfly) butterflyClass.newInstance();
-			butterfly.location = butterflyStart.toLocation();
-			butterfly.setMap(this);
-			at(butterflyStart).tileState.butterfly = butterfly;
-			at(butterflyStart).turnEntered = 0;
-		} catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
-			Debugger.ERROR(Simulator.CLASS_NAMES.get(0) + " could not be instantiated!");
-			e.printStackTrace();
-			System.exit(1);
+		
+		int numButterflies = Simulator.CONCURRENT ? Simulator.CLASS_NAMES.size() : 1;
+		butterflies = new ArrayList<AbstractButterfly>(numButterflies);
+		for (int i = 0; i < numButterflies; i++) {
+			String className = Simulator.CLASS_NAMES.get(i);
+			try {
+				Class<?> butterflyClass = Class.forName(className);
+				AbstractButterfly b = (AbstractButterfly) butterflyClass.newInstance();
+				b.location = butterflyStart.toLocation();
+				b.stats = new ParkState();
+				b.setMap(this);
+				butterflies.add(b);
+			} catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+				Debugger.ERROR(className + " could not be instantiated!");
+				e.printStackTrace();
+				System.exit(1);
+			}
 		}
+		
+		butterfly = butterflies.get(0);
+		at(butterflyStart).tileState.butterfly = butterfly;
+		at(butterflyStart).turnEntered = 0;
 	}
 	
 	/**
@@ -1375,6 +1457,8 @@ class Map {
 	 */
 	private void spreadWind(List<Flower> runningFlowers2) {
 		Debugger.DEBUG("Spreading Wind...");
+		Flight.GenerationEvent stage = 
+				Flight.beginStage("spreadWind", height, width);
 		
 		for (int row = 0; row < height; row++) {
 			for (int col = 0; col < width; col++) {
@@ -1405,79 +1489,92 @@ class Map {
 				at(position).tileState.zeroAromas();
 			}
 		}
+		
+		Flight.endStage(stage);
 	}
 	
 	////////////////////////////////////////////////////////////////////////////
 	// Flying
 	////////////////////////////////////////////////////////////////////////////
 	/**
-	 * Flies the butterfly in the given direction with the given speed. As for
+	 * Flies butterfly b in the given direction with the given speed. As for
 	 * any butterfly, the world is a dangerous place, so an exception may be
 	 * thrown if the butterfly attempts to fly into a cliff or over water. 
 	 * 
+	 * @param b The butterfly to fly.
 	 * @param heading The direction to fly.
 	 * @param speed The speed to fly
 	 * @throws CliffCollisionException
 	 * @throws WaterCollisionException
 	 */
-	public void fly(Direction heading, Speed speed) {
-		Position toPosition = getPosition(new Position(butterfly.location), heading);
-		fly(toPosition, speed, heading, false);
+	public void fly(AbstractButterfly b, Direction heading, Speed speed) {
+		Position toPosition = getPosition(new Position(b.location), heading);
+		fly(b, toPosition, speed, heading, false);
 	}
 	
 	/**
-	 * Flies the butterfly in the given direction with the given speed. This
+	 * Flies butterfly b in the given direction with the given speed. This
 	 * butterfly is fearless and does not throw an exception if it attempts to
 	 * fly into a cliff or over water.
 	 * 
+	 * @param b The butterfly to fly.
 	 * @param heading The direction to fly.
 	 * @param speed The speed to fly
 	 */
-	public void flySafe(Direction heading, Speed speed) {
-		Position toPosition = getPosition(new Position(butterfly.location), heading);
-		fly(toPosition, speed, heading, true);
+	public void flySafe(AbstractButterfly b, Direction heading, Speed speed) {
+		Position toPosition = getPosition(new Position(b.location), heading);
+		fly(b, toPosition, speed, heading, true);
 	}
 	
 	/**
-	 * Lands a butterfly. This can accomplish two things. First, a butterfly
+	 * Lands butterfly b. This can accomplish two things. First, a butterfly
 	 * absorbs the light of the tile it's on. When a butterfly lands, it cannot
 	 * incur any power penalties, and landing is a normal, not slow, operation.
 	 * Second, a butterfly must land on a tile to collect its flowers.
 	 */
-	public void land() {
-		park.state.turn++;
+	public void land(AbstractButterfly b) {
+		park.state.turn.increment();
+		b.stats.turn.increment();
 
-		Position position = new Position(butterfly.location);
-		butterfly.addPower(at(position).tileState.light);
-		moveButterfly(position); // does nothing, but makes timing consistent
-		park.update(0, null, position.row, position.col, position.row, position.col);
+		Position position = new Position(b.location);
+		b.addPower(at(position).tileState.light);
+		moveButterfly(b, position); // does nothing, but makes timing consistent
+		update(b, 0, null, position.row, position.col, position.row, position.col);
 	}
 	
 	
 	/** Don't use this yet. */
-	public void collect(Flower flower) {
+	public void collect(AbstractButterfly b, Flower flower) {
 		if (park.phase == SimulationPhase.LEARNING) {
 			throw new PrematureCollectionException();
 		}
 		
-		Tile tile = at(new Position(butterfly.location));
+		Tile tile = at(new Position(b.location));
+		boolean complete = false;
 		if (null != flower && tile.tileState.flowers.contains(flower)) {
-			park.state.foundFlowers.add(flower);
+			park.state.collected(flower);
+			complete = b.stats.collected(flower);
 		}
 		else {
-			butterfly.subtractPower(AbstractButterfly.WRONG_COLLECT_POWER_COST);
+			b.subtractPower(AbstractButterfly.WRONG_COLLECT_POWER_COST);
 		}
 		
-		park.update();
+		if (b == butterfly) {
+			park.update();
+		}
+		
+		if (complete && Simulator.END_EARLY) {
+			throw new RunCompleteException();
+		}
 	}
 	
 	/**
-	 * Updates the butterfly's state with the TileState of the tile it is 
+	 * Updates butterfly b's state with the TileState of the tile it is 
 	 * currently on. Whenever a butterfly updates its state, it loses power. 
 	 */
-	public void refreshState() {
-		butterfly.subtractPower(AbstractButterfly.REFRESH_STATE_POWER_COST);
-		butterfly.state = new TileState(at(new Position(butterfly.location)).tileState);
+	public void refreshState(AbstractButterfly b) {
+		b.subtractPower(AbstractButterfly.REFRESH_STATE_POWER_COST);
+		b.state = new TileState(at(new Position(b.location)).tileState);
 	}
 
 	/**
@@ -1486,33 +1583,35 @@ class Map {
 	 * drained of the power required to move. If a butterfly does not run out
 	 * of power, the butterfly gains the power associated with a move and moves.
 	 * 
+	 * @param b The butterfly to fly.
 	 * @param toPos The position to move to.
 	 * @param speed The speed to travel at.
 	 * @param heading The direction to travel.
 	 * @param safe True if no exception can be thrown, false otherwise. 
 	 */
-	private void fly(Position toPos, Speed speed, Direction heading, boolean safe) {
+	private void fly(AbstractButterfly b, Position toPos, Speed speed, 
+			Direction heading, boolean safe) {
 		/* No matter how perilous a move the butterfly attempt to make, the 
 		 * turn is unconditionally incremented! */
-		park.state.turn++;
+		park.state.turn.increment();
+		b.stats.turn.increment();
 		
 		/* If a collision is detected, prematurely end the turn. */
-		if (handleCollisions(at(toPos), safe)) {
-			Position p = new Position(butterfly.location);
-			park.update(0, null, p.row, p.col, p.row, p.col);
+		if (handleCollisions(b, at(toPos), safe)) {
+			Position p = new Position(b.location);
+			update(b, 0, null, p.row, p.col, p.row, p.col);
 			return;
 		}
-		int slowDown = updateCosts(toPos, speed);
+		int slowDown = updateCosts(b, toPos, speed);
 		
 		/* At this point, if an exception has not been thrown, the move will be
 		 * a success. Thus, we can update all information with the knowledge 
 		 * that the butterfly will move to a new position. */		
-		butterfly.addPower(at(toPos).tileState.light);
-		updateParkStateFly(toPos);
-		moveButterfly(toPos);
+		b.addPower(at(toPos).tileState.light);
+		Position butterflyPos = new Position(b.location);
+		moveButterfly(b, toPos);
 		
-		Position butterflyPos = new Position(butterfly.location);
-		park.update(slowDown, heading, butterflyPos.row, butterflyPos.col,
+		update(b, slowDown, heading, butterflyPos.row, butterflyPos.col,
 				toPos.row, toPos.col);
 	}
 	
@@ -1521,17 +1620,22 @@ class Map {
 	 * no exceptions can be thrown. If the move is unsafe, a collision will
 	 * be thrown.
 	 * 
+	 * @param b The butterfly that is moving.
 	 * @param destination The destination tile of a move.
 	 * @param safe If true, exceptions cannot be thrown; false, and they can be.
 	 * @return If the operation is safe, true if a collision occurred or false
 	 * if one did not occur. 
 	 */
-	private boolean handleCollisions(Tile destination, boolean safe) {
+	private boolean handleCollisions(AbstractButterfly b, Tile destination, 
+			boolean safe) {
 		if (destination instanceof Cliff) {
-			park.state.cliffCollisions++;
-			park.state.slowTurns += 
-					CliffCollisionException.CLIFF_COLLISION_SLOW_DOWN;
-			butterfly.subtractPower(
+			park.state.cliffCollisions.increment();
+			b.stats.cliffCollisions.increment();
+			park.state.slowTurns.add(
+					CliffCollisionException.CLIFF_COLLISION_SLOW_DOWN);
+			b.stats.slowTurns.add(
+					CliffCollisionException.CLIFF_COLLISION_SLOW_DOWN);
+			b.subtractPower(
 					CliffCollisionException.CLIFF_COLLISION_POWER_COST);
 			
 			if (safe) {
@@ -1542,10 +1646,13 @@ class Map {
 			}
 		}
 		if (destination instanceof Water) {
-			park.state.waterCollisions++;
-			park.state.slowTurns +=
-					WaterCollisionException.WATER_COLLISION_SLOW_DOWN;
-			butterfly.subtractPower(
+			park.state.waterCollisions.increment();
+			b.stats.waterCollisions.increment();
+			park.state.slowTurns.add(
+					WaterCollisionException.WATER_COLLISION_SLOW_DOWN);
+			b.stats.slowTurns.add(
+					WaterCollisionException.WATER_COLLISION_SLOW_DOWN);
+			b.subtractPower(
 					WaterCollisionException.WATER_COLLISION_POWER_COST);
 			
 			if (safe) {
@@ -1570,22 +1677,24 @@ class Map {
 	 * is necessary for the GUI. It determines the speed to animate the 
 	 * butterfly.
 	 */
-	private int updateCosts(Position toPos, Speed speed) {
-		long initSlowTurns = park.state.slowTurns;
-		
+	private int updateCosts(AbstractButterfly b, Position toPos, Speed speed) {
 		/* Tile Costs. */
 		Tile to = at(toPos);
-		butterfly.subtractPower(to.powerCost);
-		park.state.slowTurns += to.slowDown;		
+		b.subtractPower(to.powerCost);
 
 		/* Speed Costs. */
-		butterfly.subtractPower(speed.powerCost);
-		park.state.slowTurns += speed.slowDownNumber;
+		b.subtractPower(speed.powerCost);
+		
+		/* The slow down is summed locally rather than read back from the park
+		 * state, which other butterflies may be updating at the same time. */
+		int slowDown = to.slowDown + speed.slowDownNumber;
+		park.state.slowTurns.add(slowDown);
+		b.stats.slowTurns.add(slowDown);
 		
 		/* Wind Costs.
 		Wind costs have been removed for fall 2013.
 		
-		Position fromPos = new Position(butterfly.location);
+		Position fromPos = new Position(b.location);
 		Wind toWind = to.tileState.wind;
 		int dCol = toPos.col - fromPos.col;
 		int dRow = toPos.row - fromPos.row;
@@ -1595,42 +1704,81 @@ class Map {
 		int slowDownIntensity = Wind.WIND_SLOW_DOWN_COEFFICIENT * toWind.intensity;
 		int windPowerCost = (unitCol + unitRow) * powerIntensity;
 		int windSlowDown = (unitCol + unitRow) * slowDownIntensity;
-		butterfly.subtractPower(windPowerCost);
-		park.state.slowTurns += windSlowDown;
+		b.subtractPower(windPowerCost);
+		park.state.slowTurns.add(windSlowDown);
 		*/
 		
-		return (int) (park.state.slowTurns - initSlowTurns /*- windSlowDown */);
+		return slowDown;
 	}
 		
 	void updateParkStateFly() {
 		if (at(new Position(butterfly.location)).turnEntered <= 0) {
-			park.state.exploredTiles++;
+			park.state.exploredTiles.increment();
 		}
 	}
 	
 	/**
 	 * Updates the park state associated with a move.
+	 * 
+	 * Precondition: The caller holds the lock of toPos.
 	 */
-	private void updateParkStateFly(Position toPos) {
+	private void updateParkStateFly(AbstractButterfly b, Position toPos) {
 		if (at(toPos).turnEntered == -1) {
-			park.state.exploredTiles++;
+			park.state.exploredTiles.increment();
+			b.stats.exploredTiles.increment();
 		}
 	}
 	
 	/**
 	 * Moves a butterfly from one position to another and tidies up all the 
-	 * loose ends. This movement also invokes a draw. 
+	 * loose ends. This movement also invokes a draw. The locks of both tiles
+	 * are held while the butterfly moves between them.
 	 */
-	private void moveButterfly(Position to) {
-		Position source = new Position(butterfly.location);
-		at(source).tileState.butterfly = null;
-		at(to).tileState.butterfly = butterfly;
-		at(to).turnEntered = park.state.turn;
-		butterfly.location = to.toLocation();
+	private void moveButterfly(AbstractButterfly b, Position to) {
+		Position source = new Position(b.location);
+		int sourceStripe = tileStripe(source);
+		int toStripe = tileStripe(to);
+		Object first = tileLocks[Math.min(sourceStripe, toStripe)];
+		Object second = tileLocks[Math.max(sourceStripe, toStripe)];
+		
+		synchronized (first) {
+			synchronized (second) {
+				updateParkStateFly(b, to);
+				if (at(source).tileState.butterfly == b) {
+					at(source).tileState.butterfly = null;
+				}
+				at(to).tileState.butterfly = b;
+				at(to).turnEntered = park.state.turn.sum();
+				b.location = to.toLocation();
+			}
+		}
 		
+		if (Flight.ENABLED) {
+			Flight.move(b, b.stats.turn.sum(), 
+					source.row, source.col, to.row, to.col);
+		}
 		draw();
 	}
 	
+	/** Returns the index of the lock guarding the tile at position p. */
+	private int tileStripe(Position p) {
+		int index = (p.row * width + p.col) * 0x9E3779B9;
+		return (index ^ (index >>> 16)) & (TILE_LOCK_STRIPES - 1);
+	}
+	
+	/**
+	 * Sends a move of butterfly b up to the park. Only the first butterfly is
+	 * animated, so the moves of every other butterfly are not sent. 
+	 * 
+	 * @see danaus.Park#update(int, Direction, int, int, int, int)
+	 */
+	private void update(AbstractButterfly b, int slowDown, Direction heading,
+			int fromRow, int fromCol, int toRow, int toCol) {
+		if (b == butterfly) {
+			park.update(slowDown, heading, fromRow, fromCol, toRow, toCol);
+		}
+	}
+	
 	
 	////////////////////////////////////////////////////////////////////////////
 	// Retrieving Neighbors
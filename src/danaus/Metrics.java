@@ -0,0 +1,391 @@
+package danaus;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/* *************************************************************************//**
+ * An in-process metrics registry. When enabled, Metrics records
+ * <ul>
+ * <li>the number of calls to each butterfly API, and a histogram of their
+ * latencies,</li>
+ * <li>the time spent and bytes allocated in each phase of a simulation,
+ * and</li>
+ * <li>the number of turns taken per second.</li>
+ * </ul>
+ * Metrics are published live over JMX as danaus:type=Metrics and can be
+ * dumped as JSON at the end of a simulation. When disabled, recording a
+ * metric costs a single check of ENABLED.
+ * <br>
+ * Recording is thread safe, so butterflies flying concurrently share the
+ * registry.
+ *
+ * @see danaus.MetricsMXBean
+ * ****************************************************************************/
+public class Metrics implements MetricsMXBean {
+	/** Metrics are recorded iff ENABLED is true. */
+	public static boolean ENABLED = false;
+
+	/** The JMX name of the registry. */
+	private static final String OBJECT_NAME = "danaus:type=Metrics";
+
+	/** The state of the park being simulated, or null before a simulation. */
+	private static volatile ParkState state;
+	/** The times at which the simulation started and stopped, or 0. */
+	private static volatile long simulationStart;
+	private static volatile long simulationStop;
+
+	/** The registry published over JMX. */
+	private static final Metrics INSTANCE = new Metrics();
+
+	////////////////////////////////////////////////////////////////////////////
+	// APIs and Phases
+	////////////////////////////////////////////////////////////////////////////
+	/** The butterfly APIs whose calls are recorded. */
+	public enum Api {
+		FLY("fly"),
+		FLY_SAFE("flySafe"),
+		REFRESH_STATE("refreshState"),
+		COLLECT("collect"),
+		LAND("land");
+
+		/** The name of the API, as called by a butterfly. */
+		final String name;
+		/** The latencies of every call to the API. */
+		final Histogram latencies = new Histogram();
+
+		private Api(String name) {
+			this.name = name;
+		}
+	}
+
+	/** The phases of a simulation whose cost is recorded. */
+	public enum Phase {
+		GENERATE("generate"),
+		LEARN("learn"),
+		RUN("run");
+
+		/** The name of the phase. */
+		final String name;
+		/** The number of times the phase has been entered. */
+		final LongAdder count = new LongAdder();
+		/** The total time spent in the phase, in nanoseconds. */
+		final LongAdder nanos = new LongAdder();
+		/** The total bytes allocated during the phase. */
+		final LongAdder bytes = new LongAdder();
+
+		private Phase(String name) {
+			this.name = name;
+		}
+	}
+
+	/* *********************************************************************//**
+	 * A histogram of latencies in nanoseconds. Latencies are counted in
+	 * power-of-two buckets: bucket i holds latencies in [2^(i-1), 2^i).
+	 * Percentiles are therefore reported as the upper bound of their bucket,
+	 * which is accurate to within a factor of two.
+	 * ************************************************************************/
+	static class Histogram {
+		/** The number of latencies in each bucket. */
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		/** The number of latencies recorded. */
+		private final LongAdder count = new LongAdder();
+		/** The sum of every latency recorded. */
+		private final LongAdder total = new LongAdder();
+		/** The largest latency recorded. */
+		private final AtomicLong max = new AtomicLong();
+
+		/** Records a latency of nanos nanoseconds. */
+		void record(long nanos) {
+			if (nanos < 0) {
+				nanos = 0;
+			}
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+			count.increment();
+			total.add(nanos);
+
+			long m;
+			while ((m = max.get()) < nanos && !max.compareAndSet(m, nanos)) {
+				/* retry */
+			}
+		}
+
+		/** Forgets every latency recorded. */
+		void reset() {
+			for (int i = 0; i < 64; i++) {
+				buckets.set(i, 0);
+			}
+			count.reset();
+			total.reset();
+			max.set(0);
+		}
+
+		/** Return the number of latencies recorded. */
+		long count() {
+			return count.sum();
+		}
+
+		/** Return the mean latency, or 0 if none are recorded. */
+		long mean() {
+			long n = count.sum();
+			return n == 0 ? 0 : total.sum() / n;
+		}
+
+		/** Return the upper bound of the bucket holding the p-th percentile,
+		 * 0 &lt; p &lt;= 100, or 0 if no latencies are recorded. */
+		long percentile(double p) {
+			long n = count.sum();
+			if (n == 0) {
+				return 0;
+			}
+
+			long rank = (long) Math.ceil(n * p / 100.0);
+			long seen = 0;
+			for (int i = 0; i < 64; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return Math.min(upperBound(i), max.get());
+				}
+			}
+			return max.get();
+		}
+
+		/** Return the largest latency bucket i can hold. */
+		static long upperBound(int i) {
+			return i == 0 ? 0 : i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Recording
+	////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Enables metrics and publishes the registry over JMX.
+	 */
+	public static void enable() {
+		ENABLED = true;
+
+		if (!Common.thread_allocation_supported()) {
+			Debugger.WARNING("Allocation metrics are unsupported by this JVM.");
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					INSTANCE, new ObjectName(OBJECT_NAME));
+		} catch (Exception e) {
+			Debugger.WARNING("Metrics could not be published over JMX: " + e);
+		}
+	}
+
+	/**
+	 * Returns the time at which a call to an API starts, to be passed to
+	 * stop(...) when the call returns.
+	 *
+	 * @return The current time, or 0 if metrics are disabled.
+	 */
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records a call to api that started at time start.
+	 *
+	 * @param api The API called.
+	 * @param start The time returned by start() when the call began.
+	 */
+	public static void stop(Api api, long start) {
+		if (!ENABLED) {
+			return;
+		}
+		api.latencies.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Returns the number of bytes allocated so far by the current thread, to
+	 * be passed to endPhase(...) when a phase ends.
+	 *
+	 * @return The bytes allocated by the current thread, or 0 if unknown.
+	 */
+	public static long allocatedBytes() {
+		if (!ENABLED) {
+			return 0;
+		}
+		return Common.thread_allocated_bytes();
+	}
+
+	/**
+	 * Records that the current thread spent nanos nanoseconds in phase, and
+	 * allocated everything since allocatedBytes() returned mark.
+	 *
+	 * @param phase The phase that ended.
+	 * @param nanos The time spent in the phase.
+	 * @param mark The value of allocatedBytes() when the phase began.
+	 */
+	public static void endPhase(Phase phase, long nanos, long mark) {
+		if (!ENABLED) {
+			return;
+		}
+		phase.count.increment();
+		phase.nanos.add(nanos);
+		phase.bytes.add(allocatedBytes() - mark);
+	}
+
+	/**
+	 * Forgets every metric recorded so far, e.g. those of warmup simulations,
+	 * so the metrics reported cover only the simulations that follow.
+	 */
+	static void reset() {
+		for (Api api : Api.values()) {
+			api.latencies.reset();
+		}
+		for (Phase phase : Phase.values()) {
+			phase.count.reset();
+			phase.nanos.reset();
+			phase.bytes.reset();
+		}
+		state = null;
+		simulationStart = 0;
+		simulationStop = 0;
+	}
+
+	/** Records that the simulation of the park whose state is s began. */
+	static void beginSimulation(ParkState s) {
+		if (!ENABLED) {
+			return;
+		}
+		state = s;
+		simulationStart = System.nanoTime();
+		simulationStop = 0;
+	}
+
+	/** Records that the simulation ended. */
+	static void endSimulation() {
+		if (!ENABLED) {
+			return;
+		}
+		simulationStop = System.nanoTime();
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Reporting
+	////////////////////////////////////////////////////////////////////////////
+	public @Override long getTurns() {
+		ParkState s = state;
+		return s == null ? 0 : s.turn.sum();
+	}
+
+	public @Override double getTurnsPerSecond() {
+		long start = simulationStart;
+		if (start == 0) {
+			return 0;
+		}
+		long stop = simulationStop == 0 ? System.nanoTime() : simulationStop;
+		return stop == start ? 0 : getTurns() / ((stop - start) / 1000000000.0);
+	}
+
+	public @Override Map<String, Long> getCallCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (Api api : Api.values()) {
+			counts.put(api.name, api.latencies.count());
+		}
+		return counts;
+	}
+
+	public @Override Map<String, Long> getMeanLatencies() {
+		Map<String, Long> means = new LinkedHashMap<String, Long>();
+		for (Api api : Api.values()) {
+			means.put(api.name, api.latencies.mean());
+		}
+		return means;
+	}
+
+	public @Override Map<String, Long> getP99Latencies() {
+		Map<String, Long> p99s = new LinkedHashMap<String, Long>();
+		for (Api api : Api.values()) {
+			p99s.put(api.name, api.latencies.percentile(99));
+		}
+		return p99s;
+	}
+
+	public @Override Map<String, Long> getAllocatedBytes() {
+		Map<String, Long> bytes = new LinkedHashMap<String, Long>();
+		for (Phase phase : Phase.values()) {
+			bytes.put(phase.name, phase.bytes.sum());
+		}
+		return bytes;
+	}
+
+	public @Override String getJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"turns\": ").append(getTurns()).append(",\n");
+		json.append("  \"turnsPerSecond\": ")
+			.append(String.format(Locale.US, "%.3f", getTurnsPerSecond()))
+			.append(",\n");
+
+		json.append("  \"apis\": {\n");
+		Api[] apis = Api.values();
+		for (int i = 0; i < apis.length; i++) {
+			Histogram h = apis[i].latencies;
+			json.append("    \"").append(apis[i].name).append("\": {")
+				.append("\"count\": ").append(h.count())
+				.append(", \"totalNanos\": ").append(h.total.sum())
+				.append(", \"meanNanos\": ").append(h.mean())
+				.append(", \"p50Nanos\": ").append(h.percentile(50))
+				.append(", \"p90Nanos\": ").append(h.percentile(90))
+				.append(", \"p99Nanos\": ").append(h.percentile(99))
+				.append(", \"maxNanos\": ").append(h.max.get())
+				.append(", \"histogram\": [");
+			String separator = "";
+			for (int b = 0; b < 64; b++) {
+				long n = h.buckets.get(b);
+				if (n != 0) {
+					json.append(separator).append("[")
+						.append(Histogram.upperBound(b)).append(", ")
+						.append(n).append("]");
+					separator = ", ";
+				}
+			}
+			json.append("]}").append(i + 1 < apis.length ? ",\n" : "\n");
+		}
+		json.append("  },\n");
+
+		json.append("  \"phases\": {\n");
+		Phase[] phases = Phase.values();
+		for (int i = 0; i < phases.length; i++) {
+			json.append("    \"").append(phases[i].name).append("\": {")
+				.append("\"count\": ").append(phases[i].count.sum())
+				.append(", \"nanos\": ").append(phases[i].nanos.sum())
+				.append(", \"allocatedBytes\": ").append(phases[i].bytes.sum())
+				.append("}").append(i + 1 < phases.length ? ",\n" : "\n");
+		}
+		json.append("  }\n");
+		json.append("}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Writes every metric as JSON to the file named filename.
+	 *
+	 * @param filename The name of the file to write.
+	 */
+	public static void dump(String filename) {
+		try (Writer writer = new FileWriter(filename)) {
+			writer.write(INSTANCE.getJson());
+		} catch (IOException e) {
+			Debugger.ERROR("Metrics could not be written to " + filename +
+					": " + e.getMessage());
+		}
+	}
+
+	/* Metrics is only instantiated as the registry published over JMX. */
+	private Metrics() {}
+}
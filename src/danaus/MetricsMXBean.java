@@ -0,0 +1,35 @@
+package danaus;
+
+import java.util.Map;
+
+/**
+ * The management interface of Danaus' metrics. When metrics are enabled, the
+ * registry is published to the platform MBean server as danaus:type=Metrics,
+ * so a running simulation can be watched live from jconsole or any other JMX
+ * client.
+ *
+ * @see danaus.Metrics
+ */
+public interface MetricsMXBean {
+	/** Return the number of turns taken so far. */
+	long getTurns();
+
+	/** Return the number of turns taken per second of simulation. */
+	double getTurnsPerSecond();
+
+	/** Return the number of calls made to each butterfly API. */
+	Map<String, Long> getCallCounts();
+
+	/** Return the mean latency of each butterfly API, in nanoseconds. */
+	Map<String, Long> getMeanLatencies();
+
+	/** Return the 99th percentile latency of each butterfly API, in
+	 * nanoseconds. */
+	Map<String, Long> getP99Latencies();
+
+	/** Return the number of bytes allocated during each phase. */
+	Map<String, Long> getAllocatedBytes();
+
+	/** Return every metric as a JSON document. */
+	String getJson();
+}
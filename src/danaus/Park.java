@@ -3,7 +3,10 @@ package danaus;
 import java.awt.Color;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
 import org.xml.sax.SAXException;
@@ -39,19 +42,30 @@ public class Park {
 	long learningTime;
 	/** The time taken for a butterfly to execute on a map. */
 	long runningTime;	
+	/** The CPU time used by butterflies to learn a map. */
+	long learningCpuTime;
+	/** The CPU time used by butterflies to execute on a map. */
+	long runningCpuTime;
 	
 	/**
      * Initialize this park with a random map associated with simulator sim.
 	 */
 	Park(Simulator sim) {
+		this(sim, 0, 0);
+	}
+	
+	/**
+     * Initialize this park with a random map of height rows and width columns
+     * associated with simulator sim. If either is 0, the map is randomly sized.
+	 */
+	Park(Simulator sim, int height, int width) {
         // Initialize the park state first, since the map references it.
 		phase = SimulationPhase.LEARNING;
 		this.simulator = sim;
 		state = new ParkState();
-		map = new Map(this);
+		map = new Map(this, height, width);
 	
-		state.allFlowers = map.getFlowers(); 
-		state.foundFlowers = new ArrayList<Flower>();
+		initStates();
 	}
 	
 	/** 
@@ -71,31 +85,206 @@ public class Park {
 		state = new ParkState();
 		map = new Map(this, f);
 		
-		state.allFlowers = map.getFlowers(); 
-		state.foundFlowers = new ArrayList<Flower>();
+		initStates();
 	}
 
 	
+	/** 
+	 * Initializes the park's state and the state of every butterfly on the 
+	 * map. The park's list of found flowers is shared by every butterfly, so 
+	 * it is synchronized.
+	 */
+	private void initStates() {
+		state.allFlowers = map.getFlowers(); 
+		state.foundFlowers = 
+				Collections.synchronizedList(new ArrayList<Flower>());
+		
+		for (AbstractButterfly b : map.butterflies) {
+			b.stats.allFlowers = state.allFlowers;
+			b.stats.foundFlowers = new ArrayList<Flower>();
+		}
+	}
+	
 	/**
 	 * Begins a simulation. A butterfly first learns a map and then executes
-	 * on the map. 
+	 * on the map. If the simulation is concurrent, every butterfly learns and
+	 * then executes on its own thread.
 	 */ 
 	void simulate() {
+		if (Simulator.CONCURRENT) {
+			simulateConcurrently();
+			return;
+		}
+		
 		long start = 0;
 		long stop = 0;
+		long cpu = 0;
+		long mark = 0;
 		
 		// Learn the map
 		Debugger.DEBUG("Begin Learning...");
+		Metrics.beginSimulation(state);
 		
+		mark = Metrics.allocatedBytes();
+		Flight.PhaseEvent phase = Flight.beginPhase("learn");
+		cpu = Common.thread_cpu_time();
 		start = System.nanoTime();
 		TileState[][] states = map.butterfly.learn();
 		stop = System.nanoTime();
+		cpu = Common.thread_cpu_time() - cpu;
+		Flight.endPhase(phase, map.butterfly);
+		Metrics.endPhase(Metrics.Phase.LEARN, stop - start, mark);
 		
 		learningScore = gradeStates(states);
 		learningTime = stop - start;
+		learningCpuTime = cpu;
+		map.butterfly.stats.learningScore = learningScore;
+		map.butterfly.stats.learningTime = learningTime;
+		map.butterfly.stats.learningCpuTime = learningCpuTime;
 		
 		
 		// Run the map
+		List<Long> requiredIds = beginRunning();
+		
+		mark = Metrics.allocatedBytes();
+		phase = Flight.beginPhase("run");
+		cpu = Common.thread_cpu_time();
+		start = System.nanoTime();
+		try {
+			map.butterfly.run(requiredIds);
+		} catch (RunCompleteException e) {
+			Debugger.DEBUG("Every required flower collected; run ended early.");
+		}
+		stop = System.nanoTime();
+		cpu = Common.thread_cpu_time() - cpu;
+		Flight.endPhase(phase, map.butterfly);
+		Metrics.endPhase(Metrics.Phase.RUN, stop - start, mark);
+		Metrics.endSimulation();
+		
+		runningTime = stop - start;
+		runningCpuTime = cpu;
+		map.butterfly.stats.runningTime = runningTime;
+		map.butterfly.stats.runningCpuTime = runningCpuTime;
+	}
+	
+	/**
+	 * Simulates every butterfly on the map at once. All butterflies learn the
+	 * map concurrently, each on its own thread. Once every butterfly has 
+	 * learned the map, the map is reflowered and all butterflies run 
+	 * concurrently. The park's learning and running times are the wall time of
+	 * each phase, and its CPU times are the sum over every butterfly; the 
+	 * times of each butterfly are kept in its own state.
+	 * <br>
+	 * An exception thrown by one butterfly ends only that butterfly's flight.
+	 * It is recorded in the butterfly's state and the butterfly is not run.
+	 */
+	private void simulateConcurrently() {
+		Debugger.DEBUG("Begin Concurrent Learning...");
+		Metrics.beginSimulation(state);
+		
+		long start = System.nanoTime();
+		inParallel(new ButterflyTask() {
+			public @Override void execute(AbstractButterfly b) {
+				long mark = Metrics.allocatedBytes();
+				Flight.PhaseEvent phase = Flight.beginPhase("learn");
+				long cpu = Common.thread_cpu_time();
+				long start = System.nanoTime();
+				TileState[][] states = b.learn();
+				long stop = System.nanoTime();
+				b.stats.learningCpuTime = Common.thread_cpu_time() - cpu;
+				Flight.endPhase(phase, b);
+				Metrics.endPhase(Metrics.Phase.LEARN, stop - start, mark);
+				
+				b.stats.learningScore = gradeStates(states);
+				b.stats.learningTime = stop - start;
+			}
+		});
+		learningTime = System.nanoTime() - start;
+		learningCpuTime = 0;
+		for (AbstractButterfly b : map.butterflies) {
+			learningCpuTime += b.stats.learningCpuTime;
+		}
+		learningScore = map.butterfly.stats.learningScore;
+		
+		final List<Long> requiredIds = beginRunning();
+		
+		start = System.nanoTime();
+		inParallel(new ButterflyTask() {
+			public @Override void execute(AbstractButterfly b) {
+				long mark = Metrics.allocatedBytes();
+				Flight.PhaseEvent phase = Flight.beginPhase("run");
+				long cpu = Common.thread_cpu_time();
+				long start = System.nanoTime();
+				try {
+					b.run(new ArrayList<Long>(requiredIds));
+				} catch (RunCompleteException e) {
+					Debugger.DEBUG(() -> b.getClass().getName() + " collected " +
+							"every required flower; run ended early.");
+				}
+				b.stats.runningTime = System.nanoTime() - start;
+				b.stats.runningCpuTime = Common.thread_cpu_time() - cpu;
+				Flight.endPhase(phase, b);
+				Metrics.endPhase(Metrics.Phase.RUN, b.stats.runningTime, mark);
+			}
+		});
+		runningTime = System.nanoTime() - start;
+		runningCpuTime = 0;
+		for (AbstractButterfly b : map.butterflies) {
+			runningCpuTime += b.stats.runningCpuTime;
+		}
+		Metrics.endSimulation();
+	}
+	
+	/** A unit of work done by a single butterfly. */
+	private interface ButterflyTask {
+		void execute(AbstractButterfly b);
+	}
+	
+	/**
+	 * Executes task for every butterfly that has not failed, each on its own
+	 * thread, and waits until they all finish. 
+	 */
+	private void inParallel(final ButterflyTask task) {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < map.butterflies.size(); i++) {
+			final AbstractButterfly b = map.butterflies.get(i);
+			if (b.stats.failure != null) {
+				continue;
+			}
+			
+			Thread thread = new Thread(new Runnable() {
+				public @Override void run() {
+					try {
+						task.execute(b);
+					}
+					catch (RuntimeException | Error e) {
+						b.stats.failure = e;
+						Debugger.ERROR(b.getClass().getName() + " failed: " + e);
+					}
+				}
+			}, "butterfly-" + i + "-" + b.getClass().getName());
+			threads.add(thread);
+			thread.start();
+		}
+		
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Debugger.ERROR("Interrupted while waiting for butterflies.");
+				e.printStackTrace();
+				System.exit(1);
+			}
+		}
+	}
+	
+	/**
+	 * Transitions the park from the learning phase to the running phase. The
+	 * map is reflowered and the required flowers are chosen. 
+	 * 
+	 * @return The ids of the flowers every butterfly must collect.
+	 */
+	private List<Long> beginRunning() {
 		Debugger.DEBUG("Begin Running...");
 		
 		if(!Simulator.HEADLESS) {
@@ -103,6 +292,7 @@ public class Park {
 			simulator.gui.northPanel.setBackground(runColor);
 			simulator.gui.statePanel.setBackground(runColor);
 			simulator.gui.tileInfoPanel.setBackground(runColor);
+			simulator.gui.minimapPanel.setBackground(runColor);
 		}
 		
 		phase = SimulationPhase.RUNNING;
@@ -115,18 +305,19 @@ public class Park {
 			(int) (MIN_REQUIRED_FLOWERS_FRACTION * allFlowers.size()),
 			(int) (MAX_REQUIRED_FLOWERS_FRACTION * allFlowers.size())
 		);
-		state.requiredFlowers = 
+		List<Flower> required = 
 				(ArrayList<Flower>) map.rand.sample(allFlowers, requiredFlowersSize);
+		Set<Flower> requiredSet = new HashSet<Flower>(required);
+		state.setRequiredFlowers(required, requiredSet);
 		List<Long> requiredIds = new ArrayList<Long>();
-		for (Flower f : state.requiredFlowers) {
+		for (Flower f : required) {
 			requiredIds.add(f.getFlowerId());
 		}
+		for (AbstractButterfly b : map.butterflies) {
+			b.stats.setRequiredFlowers(required, requiredSet);
+		}
 		
-		start = System.nanoTime();
-		map.butterfly.run(requiredIds);
-		stop = System.nanoTime();
-		
-		runningTime = stop - start;
+		return requiredIds;
 	}
 	
 	/**
@@ -137,7 +328,7 @@ public class Park {
 	 * @param states A two dimensional array of tile states. 
 	 * @return A percentage of correct tile states.
 	 */
-	private double gradeStates(TileState[][] states) {
+	double gradeStates(TileState[][] states) {
 		if (null == states || null == states[0]) {
 			return 0.0;
 		}
@@ -189,31 +380,58 @@ public class Park {
 		simulator.update();
 	}
 	
+	/** Return the number of distinct required flowers found. */
 	public int numberCorrect() {
-		List<Flower> reqCopy = new ArrayList<Flower>(state.requiredFlowers);
-		List<Flower> foundCopy = new ArrayList<Flower>(state.foundFlowers);
-		reqCopy.retainAll(foundCopy);
-		return reqCopy.size();
+		return state.numberCorrect();
 	}
 	
 	/** 
      * Return the victory status of the park --true iff the butterfly collected
-	 * all the flowers. 
+	 * all the flowers. If the simulation is concurrent, return true iff every
+	 * butterfly collected all the flowers.
      */
-	public boolean isVictorious() {		
-		List<Flower> reqCopy = new ArrayList<Flower>(state.requiredFlowers);
-		List<Flower> foundCopy1 = new ArrayList<Flower>(state.foundFlowers);
-		List<Flower> foundCopy2 = new ArrayList<Flower>(state.foundFlowers);
-		foundCopy1.removeAll(reqCopy); // Extra flowers.
-		reqCopy.removeAll(foundCopy2); // Unfound flowers.
+	public boolean isVictorious() {
+		if (!Simulator.CONCURRENT) {
+			return isVictorious(state);
+		}
 		
-		for (Flower extra: foundCopy1) {
-			Debugger.WARNING("Extra flower found: " + extra.toString());
+		boolean victorious = true;
+		for (AbstractButterfly b : map.butterflies) {
+			victorious &= isVictorious(b.stats);
 		}
-		for (Flower unfound : reqCopy) {
-			Debugger.WARNING("Unfound flower: " + unfound.toString());
+		return victorious;
+	}
+	
+	/** 
+     * Return true iff the flowers found in state s are exactly the required
+     * flowers, and the flight that produced s did not fail.
+     */
+	boolean isVictorious(ParkState s) {
+		if (s.failure != null || s.requiredFlowers == null) {
+			return false;
 		}
 		
-		return reqCopy.size() == 0 && foundCopy1.size() == 0;
+		if (Debugger.WARNING_ENABLED) {
+			warnMismatchedFlowers(s);
+		}
+		return s.foundExactlyRequired();
+	}
+	
+	/* Warns about every flower found in state s that is not required, and 
+	 * every required flower that was not found. */
+	private void warnMismatchedFlowers(ParkState s) {
+		Set<Flower> required = new HashSet<Flower>(s.requiredFlowers);
+		Set<Flower> found = new HashSet<Flower>(s.foundFlowers);
+		
+		for (Flower extra : s.foundFlowers) {
+			if (!required.contains(extra)) {
+				Debugger.WARNING("Extra flower found: " + extra);
+			}
+		}
+		for (Flower unfound : s.requiredFlowers) {
+			if (!found.contains(unfound)) {
+				Debugger.WARNING("Unfound flower: " + unfound);
+			}
+		}
 	}
 }
@@ -4,34 +4,109 @@ import java.util.Formatter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * An instance represents a park's state. A park is aware of the state of the
  * game and collects helpful statistics the player may find helpful. 
+ * <br>
+ * A park keeps one state for the whole simulation, and every butterfly on the
+ * park keeps one more for its own statistics. When several butterflies fly
+ * concurrently, they all update the park's counters at once, so the counters
+ * are LongAdders rather than plain longs.
  */
 public class ParkState {
 	/** The current turn of the simulation. */
-	long turn;
+	final LongAdder turn = new LongAdder();
 	/** The number of slow turns. */
-	long slowTurns;
+	final LongAdder slowTurns = new LongAdder();
 	/** The number of flyable tiles. */
-	long numTiles;
-	/** The number of explored tiles. */
-	long exploredTiles;
+	final LongAdder numTiles = new LongAdder();
+	/** The number of explored tiles. For a butterfly, the number of tiles it
+	 * was the first to explore. */
+	final LongAdder exploredTiles = new LongAdder();
 	/** All the flowers on the map. */
 	HashSet<Flower> allFlowers;
 	/** The required flowers the player must find. */
 	List<Flower> requiredFlowers;
 	/** The flowers the player has found. */
 	List<Flower> foundFlowers;
+	/** The required flowers, hashed so collections can be checked in 
+	 * constant time. */
+	private Set<Flower> requiredSet;
+	/** The distinct required flowers the player has found. */
+	private final Set<Flower> foundRequired = new HashSet<Flower>();
+	/** The number of flowers the player has found that are not required. */
+	private int extraFound;
 	/** The total power spent by the player. */
-	long powerSpent;
+	final LongAdder powerSpent = new LongAdder();
 	/** The total power consumed by the player. */
-	long powerConsumed;
+	final LongAdder powerConsumed = new LongAdder();
 	/** The number of cliff collisions. */
-	long cliffCollisions;
+	final LongAdder cliffCollisions = new LongAdder();
 	/** The number of water collisions. */
-	long waterCollisions;
+	final LongAdder waterCollisions = new LongAdder();
+	
+	/** The score of the tile states returned by a butterfly after it has 
+	 * learned the map, as a percentage. Only set on a butterfly's state. */
+	double learningScore;
+	/** The time taken for a butterfly to learn a map. Only set on a 
+	 * butterfly's state. */
+	long learningTime;
+	/** The time taken for a butterfly to execute on a map. Only set on a 
+	 * butterfly's state. */
+	long runningTime;
+	/** The CPU time used by a butterfly to learn a map. Only set on a 
+	 * butterfly's state. */
+	long learningCpuTime;
+	/** The CPU time used by a butterfly to execute on a map. Only set on a 
+	 * butterfly's state. */
+	long runningCpuTime;
+	/** The exception that ended a butterfly's flight, or null if it flew to 
+	 * completion. Only set on a butterfly's state. */
+	Throwable failure;
+	
+	/**
+	 * Sets the flowers the player must find to required, whose hashed copy 
+	 * is shared by the states of every butterfly.
+	 */
+	void setRequiredFlowers(List<Flower> required, Set<Flower> requiredSet) {
+		this.requiredFlowers = required;
+		this.requiredSet = requiredSet;
+	}
+	
+	/**
+	 * Records that the player found flower. 
+	 * 
+	 * @return true iff flower was the last required flower left to find.
+	 */
+	synchronized boolean collected(Flower flower) {
+		foundFlowers.add(flower);
+		if (requiredSet == null || !requiredSet.contains(flower)) {
+			extraFound++;
+			return false;
+		}
+		return foundRequired.add(flower) && 
+				foundRequired.size() == requiredSet.size();
+	}
+	
+	/** Return the number of distinct required flowers found. */
+	synchronized int numberCorrect() {
+		return foundRequired.size();
+	}
+	
+	/** Return the number of flowers found that are not required. */
+	synchronized int numberExtra() {
+		return extraFound;
+	}
+	
+	/** Return true iff every required flower, and no other flower, has been
+	 * found. */
+	synchronized boolean foundExactlyRequired() {
+		return requiredSet != null && extraFound == 0 &&
+				foundRequired.size() == requiredSet.size();
+	}
 	
 	/**
 	 * Returns a string representation of the object. 
@@ -47,14 +122,14 @@ public class ParkState {
 			return "";
 		}
 		
-		formatter.format("%-20s : %6d\n", "Turn Number", turn);
-		formatter.format("%-20s : %6d\n", "Slow Turns", slowTurns);
-		formatter.format("%-20s : %6d/%-6d\n", "Tiles Explored", exploredTiles, numTiles);
+		formatter.format("%-20s : %6d\n", "Turn Number", turn.sum());
+		formatter.format("%-20s : %6d\n", "Slow Turns", slowTurns.sum());
+		formatter.format("%-20s : %6d/%-6d\n", "Tiles Explored", exploredTiles.sum(), numTiles.sum());
 		formatter.format("%-20s : %6d/%-6d\n", "Flower Found", foundFlowers.size(), allFlowers.size());
-		formatter.format("%-20s : %6d\n", "Power Spent", powerSpent);
-		formatter.format("%-20s : %6d\n", "Power Consumed", powerConsumed);
-		formatter.format("%-20s : %6d\n", "Cliff Collisions", cliffCollisions);
-		formatter.format("%-20s : %6d", "Water Collisions", waterCollisions);
+		formatter.format("%-20s : %6d\n", "Power Spent", powerSpent.sum());
+		formatter.format("%-20s : %6d\n", "Power Consumed", powerConsumed.sum());
+		formatter.format("%-20s : %6d\n", "Cliff Collisions", cliffCollisions.sum());
+		formatter.format("%-20s : %6d", "Water Collisions", waterCollisions.sum());
 
 		String retval = formatter.toString();
 		formatter.close();
@@ -0,0 +1,14 @@
+package danaus;
+/**
+ * Thrown to end the running phase as soon as a Butterfly has collected every
+ * required flower. Only thrown when the simulation ends early, and caught by
+ * the park, so a Butterfly should never catch it.
+ */
+@SuppressWarnings("serial")
+public class RunCompleteException extends RuntimeException {
+    /** Constructor: an instance with no message. The exception ends a run
+     * rather than reporting an error, so it records no stack trace. */
+    RunCompleteException() {
+        super(null, null, false, false);
+    }
+}
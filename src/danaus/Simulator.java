@@ -3,6 +3,7 @@ package danaus;
 import java.awt.Color;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Semaphore;
 import javax.xml.parsers.ParserConfigurationException;
@@ -36,6 +37,23 @@ public class Simulator {
 	public static String MAP_FILENAME;
 	/** If true, a butterfly has infinite energy. */
 	public static boolean INFINITE_ENERGY;
+	/** If true, a butterfly is created for every class parsed from the command
+	 * line, and they all fly the same park concurrently, each on its own 
+	 * thread. */
+	public static boolean CONCURRENT;
+	/** The name of the file metrics are written to, or null if metrics are
+	 * not recorded. */
+	public static String METRICS_FILENAME;
+	/** The name of the file a flight recording is written to, or null if
+	 * the simulation is not recorded. */
+	public static String RECORDING_FILENAME;
+	/** If true, a butterfly's run ends as soon as it has collected every 
+	 * required flower. */
+	public static boolean END_EARLY;
+	/** The number of timed simulations, or 0 to simulate once. */
+	public static int REPEAT;
+	/** The number of untimed simulations before the timed ones. */
+	public static int WARMUP;
 	/** The names of the classes parsed from the command line. */
 	public static List<String> CLASS_NAMES = new ArrayList<String>();
 	
@@ -43,6 +61,11 @@ public class Simulator {
 	public Park park;
 	/** A simulator's GUI */
 	public GUI gui;
+	/** The times of every timed simulation when simulations are repeated, or
+	 * null. Each row holds, in nanoseconds, the learning time, running time, 
+	 * learning CPU time, and running CPU time of a simulation, followed by its
+	 * turns and slow turns. */
+	private long[][] timings;
 
 	/** When the Simulator owns the semaphore, the GUI cannot move. When the 
 	 * GUI owns the semaphore, the simulator cannot run. */
@@ -67,31 +90,104 @@ public class Simulator {
 		Simulator.INFINITE_ENERGY = true;
 				
 		final Simulator simulator;
-		if (null == Simulator.MAP_FILENAME) {
-			simulator = new Simulator();
+		if (0 < Simulator.REPEAT) {
+			simulator = Simulator.repeatedly();
 		}
 		else {
-			simulator = new Simulator(Simulator.MAP_FILENAME);
-		}
-		
-		if (!HEADLESS) {
-			Debugger.DEBUG("GUI Initializing...");
-			GUI gui = new GUI(simulator);
-			simulator.gui = gui;
-			gui.updateState(simulator.park.state, simulator.park.map.butterfly);
-			gui.setVisible(true);
-		}
+			simulator = Simulator.create();
+			
+			if (!HEADLESS) {
+				Debugger.DEBUG("GUI Initializing...");
+				GUI gui = new GUI(simulator);
+				simulator.gui = gui;
+				gui.updateState(simulator.park.state, simulator.park.map.butterfly);
+				gui.setVisible(true);
+			}
 
-		Debugger.DEBUG("Simulation Begun...");
-		simulator.simulate();
-		Debugger.DEBUG("Simulation Complete.");
+			Debugger.DEBUG("Simulation Begun...");
+			simulator.simulate();
+			Debugger.DEBUG("Simulation Complete.");
+		}
 		
+		Debugger.flush();
 		if (simulator.park.isVictorious()) {
 			simulator.victory();
 		} 
 		else {
 			simulator.failure();
 		}
+		
+		if (null != Simulator.METRICS_FILENAME) {
+			Metrics.dump(Simulator.METRICS_FILENAME);
+		}
+		Flight.stop();
+	}
+	
+	/* Returns a simulator on the map given on the command line, or on a 
+	 * random map if none was given. */
+	private static Simulator create() 
+	throws ParserConfigurationException, SAXException, IOException {
+		if (null == Simulator.MAP_FILENAME) {
+			return new Simulator();
+		}
+		else {
+			return new Simulator(Simulator.MAP_FILENAME);
+		}
+	}
+	
+	/**
+	 * Simulates WARMUP + REPEAT times, each time on a freshly built park of 
+	 * the same seed, and returns the simulator of the last simulation. The 
+	 * warmup simulations are not timed; they give the JIT time to compile the
+	 * engine and the butterfly, so the timed simulations measure steady-state
+	 * performance. Simulations are always headless.
+	 * <br>
+	 * The returned simulator reports the median learning and running times 
+	 * of the timed simulations, and keeps every timing for getTimingStats().
+	 * Metrics recorded during the warmup simulations are discarded.
+	 */
+	private static Simulator repeatedly() 
+	throws ParserConfigurationException, SAXException, IOException {
+		HEADLESS = true;
+		
+		Simulator simulator = null;
+		long[][] timings = new long[REPEAT][];
+		for (int i = 0; i < WARMUP + REPEAT; i++) {
+			if (Debugger.DEBUG_ENABLED) {
+				Debugger.DEBUG("Simulation " + (i + 1) + " of " + 
+						(WARMUP + REPEAT) + " Begun...");
+			}
+			simulator = create();
+			if (null == SEED) {
+				SEED = simulator.park.map.seed;
+			}
+			simulator.simulate();
+			
+			/* Metrics cover only the timed simulations, like the timings. */
+			if (i == WARMUP - 1) {
+				Metrics.reset();
+			}
+			if (WARMUP <= i) {
+				Park park = simulator.park;
+				timings[i - WARMUP] = new long[] {
+					park.learningTime, park.runningTime, 
+					park.learningCpuTime, park.runningCpuTime,
+					park.state.turn.sum(), park.state.slowTurns.sum()
+				};
+				if (Debugger.WARNING_ENABLED && 
+						timings[i - WARMUP][4] != timings[0][4]) {
+					Debugger.WARNING("Simulation " + (i + 1) + " took " + 
+							timings[i - WARMUP][4] + " turns instead of " + 
+							timings[0][4] + "; the butterfly is not " +
+							"deterministic.");
+				}
+			}
+		}
+		
+		simulator.timings = timings;
+		simulator.park.learningTime = (long) percentile(column(timings, 0), 50);
+		simulator.park.runningTime  = (long) percentile(column(timings, 1), 50);
+		return simulator;
 	}
 	
 	/**
@@ -140,6 +236,36 @@ public class Simulator {
 				INFINITE_ENERGY = true;
 				i++;
 				break;
+			case ("-c"):
+			case ("--concurrent"):
+				CONCURRENT = true;
+				i++;
+				break;
+			case ("-m"):
+			case ("--metrics"):
+				METRICS_FILENAME = sysv[i + 1];
+				Metrics.enable();
+				i += 2;
+				break;
+			case ("-e"):
+			case ("--end-early"):
+				END_EARLY = true;
+				i++;
+				break;
+			case ("--repeat"):
+				REPEAT = Integer.parseInt(sysv[i + 1]);
+				i += 2;
+				break;
+			case ("--warmup"):
+				WARMUP = Integer.parseInt(sysv[i + 1]);
+				i += 2;
+				break;
+			case ("-r"):
+			case ("--record"):
+				RECORDING_FILENAME = sysv[i + 1];
+				Flight.start(RECORDING_FILENAME);
+				i += 2;
+				break;
 			default:
 				CLASS_NAMES.add(sysv[i]);
 				i++;
@@ -161,8 +287,14 @@ public class Simulator {
 		options       += "[-d | --debug] ";
 		options       += "[-w | --warning] ";
 		options       += "[-i | --infinite] ";
+		options       += "[-c | --concurrent] ";
+		options       += "[-e | --end-early] ";
 		options 	  += "[-s | --seed seed] ";
 		options 	  += "[-f | --file file] ";
+		options 	  += "[-m | --metrics file] ";
+		options 	  += "[-r | --record file] ";
+		options 	  += "[--repeat n] ";
+		options 	  += "[--warmup m] ";
 		String params  = "[class]...";
 		System.out.println("USAGE " + call + options + params); 
 	}
@@ -172,7 +304,16 @@ public class Simulator {
 	////////////////////////////////////////////////////////////////////////////
 	/* Constructor: an instance operating on a random map. */
 	Simulator() {
-		park = new Park(this);
+		this(0, 0);
+	}
+	
+	/* Constructor: an instance operating on a random map of height rows and 
+	 * width columns. If either is 0, the map is randomly sized. */
+	Simulator(int height, int width) {
+		long mark = Metrics.allocatedBytes();
+		long start = System.nanoTime();
+		park = new Park(this, height, width);
+		Metrics.endPhase(Metrics.Phase.GENERATE, System.nanoTime() - start, mark);
 		GUIMoving = new Semaphore(1);
 		Common.acquire_or_exit(GUIMoving);
 	}
@@ -184,7 +325,10 @@ public class Simulator {
 	 */
 	Simulator(String filename) throws ParserConfigurationException, 
 	SAXException, IOException {
+		long mark = Metrics.allocatedBytes();
+		long start = System.nanoTime();
 		park = new Park(this, filename);
+		Metrics.endPhase(Metrics.Phase.GENERATE, System.nanoTime() - start, mark);
 		GUIMoving = new Semaphore(1);
 		Common.acquire_or_exit(GUIMoving);
 	}
@@ -262,6 +406,7 @@ public class Simulator {
 		gui.northPanel.setBackground(victory);
 		gui.statePanel.setBackground(victory);
 		gui.tileInfoPanel.setBackground(victory);
+		gui.minimapPanel.setBackground(victory);
 	}
 
 	/** Prints victory message and game statistics. */
@@ -269,6 +414,12 @@ public class Simulator {
 		System.out.println("WIN");
 		System.out.println("=================================");
 		System.out.println(getPerfStats());
+		if (CONCURRENT) {
+			System.out.println(getButterflyStats());
+		}
+		if (null != timings) {
+			System.out.println(getTimingStats());
+		}
 	}
 
 	/** Sets the GUI's background red to indicate failure. */
@@ -277,6 +428,7 @@ public class Simulator {
 		gui.northPanel.setBackground(failure);
 		gui.statePanel.setBackground(failure);
 		gui.tileInfoPanel.setBackground(failure);
+		gui.minimapPanel.setBackground(failure);
 	}
 
 	/** Prints a defeat message and game statistics. */
@@ -284,6 +436,12 @@ public class Simulator {
 		System.out.println("LOSE.");
 		System.out.println("==================================");
 		System.out.println(getPerfStats());
+		if (CONCURRENT) {
+			System.out.println(getButterflyStats());
+		}
+		if (null != timings) {
+			System.out.println(getTimingStats());
+		}
 	}
 	
 	/** Return a string version of the game's performance statistics. */
@@ -293,18 +451,20 @@ public class Simulator {
 		String halfColTwoSize = String.valueOf((Integer.parseInt(colTwoSize) / 2));
 		
 		/* Adjust time according to slow turns. */
+		long turn_ = park.state.turn.sum();
+		long slowTurns_ = park.state.slowTurns.sum();
 		double totalTime_ = (park.learningTime + park.runningTime) / 1000000000.0;
-		long totalTurns_ = park.state.turn + park.state.slowTurns;
-		double timePerTurn_ = totalTime_ / park.state.turn;
+		long totalTurns_ = turn_ + slowTurns_;
+		double timePerTurn_ = totalTime_ / turn_;
 		double adjustedTime_ = timePerTurn_ * totalTurns_;
 		
 		String turns = String.format(
 			"%-" + colOneSize + "s: %" + colTwoSize + "s\n", 
-			"Turns", park.state.turn
+			"Turns", turn_
 		);
 		String slowTurns = String.format(
 			"%-" + colOneSize + "s: %" + colTwoSize + "s\n", 
-			"Slow Turns", park.state.slowTurns
+			"Slow Turns", slowTurns_
 		);
 		String totalTurns = String.format(
 			"%-" + colOneSize + "s: %" + colTwoSize + "s\n", 
@@ -348,4 +508,101 @@ public class Simulator {
 			   learningScore +
 			   flowersCorrect;
 	}
+	
+	/** 
+	 * Return a string version of the statistics of every butterfly in a 
+	 * concurrent simulation, one row per butterfly.
+	 */
+	private String getButterflyStats() {
+		StringBuilder stats = new StringBuilder();
+		stats.append(String.format("%-3s %-24s %8s %8s %10s %10s %7s %9s %s\n",
+				"#", "Butterfly", "Turns", "Slow", "Learn (s)", "Run (s)", 
+				"Score", "Flowers", "Result"));
+		
+		for (int i = 0; i < park.map.butterflies.size(); i++) {
+			AbstractButterfly b = park.map.butterflies.get(i);
+			ParkState s = b.stats;
+			String result = s.failure != null ? s.failure.getClass().getSimpleName() :
+				park.isVictorious(s) ? "WIN" : "LOSE";
+			int required = s.requiredFlowers == null ? 0 : s.requiredFlowers.size();
+			
+			stats.append(String.format("%-3d %-24s %8d %8d %10.6f %10.6f %6.1f%% %4d/%-4d %s\n",
+					i, b.getClass().getName(), s.turn.sum(), s.slowTurns.sum(),
+					s.learningTime / 1000000000.0, s.runningTime / 1000000000.0,
+					s.learningScore, s.foundFlowers.size(), required, result));
+		}
+		
+		return stats.toString().trim();
+	}
+	
+	/**
+	 * Return a string version of the times of repeated simulations: the mean,
+	 * median, 90th and 99th percentile, and maximum of every time, in 
+	 * seconds. The adjusted time of a simulation is its total wall time 
+	 * scaled by its slow turns, as in getPerfStats().
+	 */
+	private String getTimingStats() {
+		int n = timings.length;
+		double[] learning = column(timings, 0);
+		double[] running = column(timings, 1);
+		double[] learningCpu = column(timings, 2);
+		double[] runningCpu = column(timings, 3);
+		double[] total = new double[n];
+		double[] totalCpu = new double[n];
+		double[] adjusted = new double[n];
+		for (int i = 0; i < n; i++) {
+			total[i] = learning[i] + running[i];
+			totalCpu[i] = learningCpu[i] + runningCpu[i];
+			long turns = timings[i][4];
+			long slowTurns = timings[i][5];
+			adjusted[i] = total[i] / turns * (turns + slowTurns);
+		}
+		
+		StringBuilder stats = new StringBuilder();
+		stats.append(String.format("Timings of %d simulations after %d warmups\n",
+				n, WARMUP));
+		stats.append(String.format("%-15s %11s %11s %11s %11s %11s\n", 
+				"", "Mean", "Median", "P90", "P99", "Max"));
+		stats.append(timingRow("Learning Time", learning));
+		stats.append(timingRow("Running Time", running));
+		stats.append(timingRow("Total Time", total));
+		stats.append(timingRow("Adjusted Time", adjusted));
+		stats.append(timingRow("Learning CPU", learningCpu));
+		stats.append(timingRow("Running CPU", runningCpu));
+		stats.append(timingRow("Total CPU", totalCpu));
+		return stats.toString().trim();
+	}
+	
+	/* Return a row of getTimingStats() summarizing times, in nanoseconds. */
+	private static String timingRow(String name, double[] times) {
+		double mean = 0;
+		for (double time : times) {
+			mean += time;
+		}
+		mean /= times.length;
+		
+		return String.format("%-15s %11.6f %11.6f %11.6f %11.6f %11.6f\n", 
+				name, mean / 1000000000.0, 
+				percentile(times, 50) / 1000000000.0, 
+				percentile(times, 90) / 1000000000.0,
+				percentile(times, 99) / 1000000000.0, 
+				percentile(times, 100) / 1000000000.0);
+	}
+	
+	/* Return column c of rows. */
+	private static double[] column(long[][] rows, int c) {
+		double[] column = new double[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			column[i] = rows[i][c];
+		}
+		return column;
+	}
+	
+	/* Return the p-th percentile of values, by the nearest-rank method. */
+	private static double percentile(double[] values, double p) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
 }
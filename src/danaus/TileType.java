@@ -1,5 +1,30 @@
 package danaus;
 
+/**
+ * An instance is a kind of tile. Each kind carries the costs the engine
+ * charges a butterfly for flying onto a tile of that kind, so a butterfly
+ * that has learned the map can plan its routes.
+ * 
+ * @see danaus.Map#updateCosts(AbstractButterfly, Map.Position, Speed)
+ */
 public enum TileType {
-	LAND, FOREST, CLIFF, WATER
+	LAND  (true,  0, 0),
+	FOREST(true,  1, 0),
+	CLIFF (false, Integer.MAX_VALUE, Integer.MAX_VALUE),
+	WATER (false, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	
+	/** True iff a butterfly can fly onto a tile of this kind. */
+	public final boolean flyable;
+	/** The slow turns added by flying onto a tile of this kind. */
+	public final int slowDown;
+	/** The power subtracted by flying onto a tile of this kind. */
+	public final int powerCost;
+	
+	/** Constructor: a kind of tile that is flyable iff f, with slow down s 
+	 * and power cost p. */
+	TileType(boolean f, int s, int p) {
+		this.flyable = f;
+		this.slowDown = s;
+		this.powerCost = p;
+	}
 }
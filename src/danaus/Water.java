@@ -7,9 +7,9 @@ package danaus;
 public class Water extends Tile {
 	/* Tile specific constant. @see main.Tile */
 	private static final String NAME = "water";
-	private static final boolean FLYABLE = false; 
-	private static final int SLOW_DOWN = Integer.MAX_VALUE;
-	private static final int POWER_COST = Integer.MAX_VALUE;
+	private static final boolean FLYABLE = TileType.WATER.flyable; 
+	private static final int SLOW_DOWN = TileType.WATER.slowDown;
+	private static final int POWER_COST = TileType.WATER.powerCost;
 			
 	/** 
      * Constructor: an instance with skin skin and tile state tileState.
@@ -0,0 +1,243 @@
+package student;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import danaus.*;
+import student.nav.Directions;
+import student.nav.GridSearch;
+import student.nav.TorusGrid;
+
+/** An instance locates flowers the butterfly has never seen from the aromas it smells.
+ *
+ *  The engine spreads the aroma of a flower over every flyable tile by a wrap-around, 8-connected
+ *  breadth-first search, and the intensity at a tile s moves away is the flower's intensity divided
+ *  by (s+1)^2, as computed by Aroma.calculateIntensity. So a sample of the aromas at a tile tells us
+ *  how many moves away each flower is, once we know the flower's own intensity. Over the learned
+ *  map, the tiles at that distance form a ring around the sample tile, and the rings of a few
+ *  samples meet at the flower.
+ *
+ *  A flower's own intensity is not visible, so every tile is a candidate only while all the samples
+ *  agree on an intensity for it: sample k at distance d_k implies intensity i_k*(d_k+1)^2, and a
+ *  tile is dropped as soon as two samples imply different ones. If every flower seen while learning
+ *  had the same intensity, new flowers are assumed to share it, which lets the very first sample
+ *  cut the candidates down to a ring. If that assumption empties a flower's candidates, it is
+ *  dropped and the candidates are rebuilt from the samples alone.
+ *
+ *  A flower whose aroma is missing at a sample tile cannot reach that tile, so it cannot be reached
+ *  by the butterfly either and is given up.
+ */
+class AromaLocator {
+	/** The relative difference below which two implied intensities are taken to be equal */
+	private static final double TOLERANCE = 1e-9;
+
+	/** The number of tiles of distances kept by the cache of searches */
+	private static final int CACHE_TILES = 1 << 22;
+
+	/** The learned map, and the breadth-first searches over it */
+	private final TorusGrid grid;
+	private final GridSearch search;
+
+	/** The intensity every flower is assumed to have, or 0 if it is unknown */
+	private double intensity;
+
+	/** The tiles of the samples taken, and the aromas smelled at each of them */
+	private final List<Integer> sampleTiles = new ArrayList<Integer>();
+	private final List<Map<Long,Double>> sampleAromas = new ArrayList<Map<Long,Double>>();
+
+	/** The candidate tiles of every flower not yet given up, and for each candidate the intensity
+	 *  the samples so far imply */
+	private final Map<Long,int[]> candidates = new HashMap<Long,int[]>();
+	private final Map<Long,double[]> implied = new HashMap<Long,double[]>();
+
+	/** The distances from the tiles searched from most recently. A tile to smell at is searched from
+	 *  to fly there, and again to narrow the candidates and to pick the next tile once there, so
+	 *  every search is kept until the cache holds CACHE_TILES tiles of distances */
+	private final Map<Integer,int[]> searches;
+
+	/** An instance creates a locator of flowers on a learned map.
+	 *
+	 *  @param grid The learned map.
+	 *  @param flowerIds The IDs of the flowers to locate.
+	 *  @param known Flowers seen while learning, whose intensities hint at those of new flowers.
+	 */
+	AromaLocator(TorusGrid grid, Set<Long> flowerIds, Iterable<Flower> known) {
+		this.grid = grid;
+		this.search = new GridSearch(grid);
+
+		final int cached = Math.max(16, CACHE_TILES/grid.size());
+		searches = new LinkedHashMap<Integer,int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected @Override boolean removeEldestEntry(Map.Entry<Integer,int[]> eldest) {
+				return size() > cached;
+			}
+		};
+
+		for (Flower f : known) {
+			if (intensity == 0) intensity = f.aromaIntensity;
+			else if (intensity != f.aromaIntensity) { intensity = 0; break; }
+		}
+
+		for (long id : flowerIds) candidates.put(id, null);
+	}
+
+	/** An instance returns true iff some flower is still being located and has more than one
+	 *  candidate tile, or has not been sampled yet */
+	boolean unresolved() {
+		for (int[] tiles : candidates.values()) {
+			if (tiles == null || tiles.length > 1) return true;
+		}
+		return false;
+	}
+
+	/** An instance returns the candidate tiles of every flower that is still being located. A flower
+	 *  that has not been sampled has no entry */
+	Map<Long,int[]> candidates() {
+		final Map<Long,int[]> result = new HashMap<Long,int[]>();
+		for (Map.Entry<Long,int[]> e : candidates.entrySet()) {
+			if (e.getValue() != null) result.put(e.getKey(), e.getValue());
+		}
+		return result;
+	}
+
+	/** An instance stops locating flower id, for instance because it has been collected */
+	void forget(long id) {
+		candidates.remove(id);
+		implied.remove(id);
+	}
+
+	/** An instance narrows the candidates of every flower with the aromas smelled at tile.
+	 *
+	 *  @param tile The bit row*width+col of the tile the butterfly is on.
+	 *  @param aromas The aromas at the tile, as returned by TileState.getAromas().
+	 */
+	void sample(int tile, List<Aroma> aromas) {
+		final Map<Long,Double> smelled = new HashMap<Long,Double>();
+		for (Aroma a : aromas) {
+			if (candidates.containsKey(a.getFlowerId())) smelled.put(a.getFlowerId(), a.intensity);
+		}
+		sampleTiles.add(tile);
+		sampleAromas.add(smelled);
+
+		final int[] dist = distances(tile);
+		for (long id : new ArrayList<Long>(candidates.keySet())) {
+			final Double i = smelled.get(id);
+			if (i == null || i <= 0) {
+				forget(id);
+				continue;
+			}
+			narrow(id, i, dist);
+			if (candidates.get(id).length == 0) rebuild(id);
+		}
+	}
+
+	/** An instance returns the tile to smell at next, or -1 if every flower is located.
+	 *
+	 *  On an 8-connected map the tiles at a given distance form the sides of a square, and the tiles
+	 *  along a side stay at the same distance from every tile near the butterfly, so smelling near
+	 *  the butterfly barely helps. Smelling at one of the candidates themselves does: the others are
+	 *  at many different distances from it. So the next tile is the nearest candidate of the flower
+	 *  with the most candidates. Smelling there either finds the flower or rules the tile out, so
+	 *  every probe makes progress.
+	 *
+	 *  @param here The bit row*width+col of the tile the butterfly is on.
+	 */
+	int probe(int here) {
+		int[] largest = null;
+		for (int[] tiles : candidates.values()) {
+			if (tiles != null && tiles.length > 1 && (largest == null || tiles.length > largest.length)) {
+				largest = tiles;
+			}
+		}
+		if (largest == null) return -1;
+
+		final int[] fromHere = distances(here);
+		int best = -1;
+		for (int t : largest) {
+			if (fromHere[t] > 0 && (best < 0 || fromHere[t] < fromHere[best])) best = t;
+		}
+		return best;
+	}
+
+	/** An instance returns the directions of a shortest route from tile from to tile to over the
+	 *  flyable tiles of the learned map, or null if there is none */
+	List<Direction> path(int from, int to) {
+		final int[] dist = distances(to);
+		if (dist[from] < 0) return null;
+
+		// Every move to a neighbor one move nearer to the target is on a shortest route
+		final List<Direction> steps = new ArrayList<Direction>();
+		for (int t = from; t != to; ) {
+			for (int d = 0; d < Directions.COUNT; ++d) {
+				final int next = grid.neighbor(t, d);
+				if (dist[next] == dist[t]-1) {
+					steps.add(Directions.get(d));
+					t = next;
+					break;
+				}
+			}
+		}
+		return steps;
+	}
+
+	/** An instance narrows the candidates of flower id with its intensity i at a tile, given the
+	 *  distances dist from that tile */
+	private void narrow(long id, double i, int[] dist) {
+		final int[] tiles = candidates.get(id);
+		final double[] intensities = implied.get(id);
+
+		final int count = tiles == null ? grid.size() : tiles.length;
+		final int[] kept = new int[count];
+		final double[] keptIntensities = new double[count];
+		int n = 0;
+		for (int k = 0; k < count; ++k) {
+			final int t = tiles == null ? k : tiles[k];
+			if (dist[t] < 0) continue;
+
+			final double implies = i * (dist[t]+1.0)*(dist[t]+1.0);
+			final double expected = tiles == null ? intensity : intensities[k];
+			if (expected != 0 && Math.abs(implies-expected) > TOLERANCE*expected) continue;
+
+			kept[n] = t;
+			keptIntensities[n] = implies;
+			n++;
+		}
+		candidates.put(id, Arrays.copyOf(kept, n));
+		implied.put(id, Arrays.copyOf(keptIntensities, n));
+	}
+
+	/** An instance rebuilds the candidates of flower id from every sample without assuming its
+	 *  intensity, after the assumption left it no candidates */
+	private void rebuild(long id) {
+		if (intensity == 0) {
+			// The samples themselves disagree, so the flower cannot be located
+			forget(id);
+			return;
+		}
+
+		final double assumed = intensity;
+		intensity = 0;
+		candidates.put(id, null);
+		for (int k = 0; k < sampleTiles.size(); ++k) {
+			narrow(id, sampleAromas.get(k).get(id), distances(sampleTiles.get(k)));
+		}
+		intensity = assumed;
+		if (candidates.get(id).length == 0) forget(id);
+	}
+
+	/** An instance returns the number of moves from tile to every tile over the flyable tiles of the
+	 *  learned map, or -1 where unreachable, searching only if the cache does not hold them */
+	private int[] distances(int tile) {
+		int[] dist = searches.get(tile);
+		if (dist == null) {
+			dist = search.bfs(tile);
+			searches.put(tile, dist);
+		}
+		return dist;
+	}
+}
@@ -1,8 +1,8 @@
 package student;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -10,30 +10,41 @@ import java.util.Map;
 import java.util.Set;
 
 import danaus.*;
+import student.nav.Directions;
+import student.nav.GridSearch;
+import student.nav.TorusGrid;
 
 public class Butterfly extends AbstractButterfly {
 	/** An array of TileStates to keep track of tile information which we acquire 
-	 *  We arbitrarily set this to 100 by 100 because we cannot access getMapWidth() and
-	 *  getMapHeight() before learn() is initialized. The value is chosen because any recursion
-	 *  stack larger than 100 will fail, so it is extremely unlikely a map of size > 100 will be used.
-	 *  
-	 *  We greedily initialize this outside the learn phase to avoid spending additional time on
-	 *  a trivial operation
+	 *  It is sized from getMapHeight() and getMapWidth() at the start of learn(), so any map
+	 *  size is supported
 	 */
-	private final static int SIZE = 100;
-	private static TileState[][] result = new TileState[SIZE][SIZE];
+	private TileState[][] result;
 
-	/** An array of booleans to keep track of tiles which have been visited 
-	 *  We greedly initialize these outside of the learn and run phases to avoid spending time on a trivial operation
+	/** Bitsets to keep track of tiles which have been visited in the learn and run phases, and of
+	 *  the obstacles found while learning. Tile [row,col] is bit row*width+col. A bitset takes one
+	 *  bit per tile instead of a boolean's byte, so even large maps stay in cache
 	 */
-	private static boolean[][] v = new boolean[SIZE][SIZE];
-	private static boolean[][] vRun = new boolean[SIZE][SIZE];
-
-	/** Dummy variables to store the current location of the butterfly */
-	private static int row, col;
+	private BitSet visited;
+	private BitSet visitedRun;
+	private BitSet obstacles;
 
 	/** Variables to store the height and width of the map */
-	private static int height, width;
+	private int height, width;
+
+	/** The costs and next hops between the tiles of every flower seen in the learn phase and the
+	 *  tile the learn phase ended on, built at the end of the learn phase
+	 */
+	private DistanceMatrix distances;
+
+	/** The number of flowers the engine plants for the run phase by default, which the distance
+	 *  matrix leaves room for */
+	private static final int RUNNING_FLOWERS = 10;
+
+	/** The most moves spent smelling for the flowers planted after the learn phase, and the most
+	 *  tiles a located flower may still be on for the tour to visit them all */
+	private static final int MAX_PROBE_MOVES = 64;
+	private static final int MAX_CANDIDATES = 8;
 
 	/** Set the "default" speed we use to be FAST
 	 * This will be changed in the next assignment where power conservation is a concern
@@ -46,101 +57,140 @@ public class Butterfly extends AbstractButterfly {
 	 */
 	private Map<Flower,Location> flowerLoc = new HashMap<Flower,Location>();
 
-	/** A stack (via the Deque interface) to implement the LIFO behavior of the DFS 
-	 * Precondition: Direction must be one of the 8 valid cardinal directions in the direction class 
+	/** An explicit stack to implement the LIFO behavior of the DFS without recursion, so the depth
+	 *  of the search is bounded by the number of tiles rather than by the JVM's call stack.
+	 *  Frame i holds the direction flown to enter its tile (null for the starting tile) and the
+	 *  index 0-8 of the next neighbor of its tile to try
 	 */
-	private static Deque<Direction> dfsStack = new ArrayDeque<Direction>();
-	private static Deque<Direction> dfsCollectStack = new ArrayDeque<Direction>();
+	private Direction[] stackEntry;
+	private int[] stackNext;
+	private int depth;
 
-	/** An instance generalizes a pair of integers to cardinal directions 
-	 *  
-	 * @param r An integer r={-1,0,1} describing the direction in the y-axis
-	 * @param c An integer c={-1,0,1} describing the direction in the x-axis
-	 * @return A direction value of class Direction that is one of the 8 cardinal directions
+	/** The graph of the map as far as we have learned it, which every planner searches, and the
+	 *  search for the nearest unexplored tile while learning
+	 */
+	private TorusGrid grid;
+	private GridSearch search;
+
+	/** The number of neighbors of every tile that are still unknown. Keeping the counts up to date as
+	 *  tiles become known makes finding the next tile to probe, and telling whether a tile has
+	 *  anything left to probe, a lookup
 	 */
-	private static Direction dir(int r, int c) {
-		if(r==-1 && c==-1) return Direction.NW;
-		if(r==-1 && c==0)  return Direction.N;
-		if(r==-1 && c==1)  return Direction.NE;
-		if(r==1  && c==-1) return Direction.SW;
-		if(r==1  && c==0)  return Direction.S;
-		if(r==1  && c==1)  return Direction.SE;
-		if(r==0  && c==-1) return Direction.W;
-		return Direction.E;
+	private byte[] unknown;
+
+	/** The number of neighbors tried from every tile, including the tile itself */
+	private static final int NEIGHBORS = 9;
+
+	/** An instance allocates the search state for a map of height by width tiles */
+	private void allocate() {
+		result = new TileState[height][width];
+		visited = new BitSet(height*width);
+		visitedRun = new BitSet(height*width);
+		obstacles = new BitSet(height*width);
+		stackEntry = new Direction[height*width];
+		stackNext = new int[height*width];
+		depth = 0;
+		grid = new TorusGrid(height, width);
+		search = new GridSearch(grid);
+		unknown = new byte[height*width];
+		Arrays.fill(unknown, (byte) Directions.COUNT);
+	}
+
+	/** An instance marks tile as visited, so it is known to be open or an obstacle */
+	private void know(int tile) {
+		if (visited.get(tile)) return;
+		visited.set(tile);
+		for (int d = 0; d < Directions.COUNT; ++d) unknown[grid.neighbor(tile, d)]--;
+	}
+
+	/** An instance pushes a frame for the tile just entered by flying in direction d onto the stack */
+	private void push(Direction d) {
+		stackEntry[depth] = d;
+		stackNext[depth] = 0;
+		depth++;
 	}
 
-	/** An instance runs a stack-based depth-first search (DFS) to traverse a map 
-	 *         
-	 *  The algorithm uses the flySafe function to fly a butterfly to an arbitrary location.
-	 *  If the action was not possible (i.e. the butterfly hit an obstacle), the tile is still 
-	 *  marked as visited, and recorded as "null" in the results array for lookup by the run phase.
+	/** An instance explores the map, always flying the shortest known route to the nearest tile we
+	 *  know nothing about.
+	 *  
+	 *  Every tile is unknown, open (visited and flown onto) or an obstacle (visited but not flyable).
+	 *  Probing an unknown tile with flySafe costs a turn whether or not the butterfly gets there, so
+	 *  every tile is probed exactly once and known tiles are never probed again. Comparing the
+	 *  butterfly's location before and after the flySafe tells an obstacle apart without the overhead
+	 *  of a trace arising from a try-catch block, and without refreshing the state of a tile we
+	 *  never left.
 	 *  
-	 *  Use of the flySafe function, and comparison of the butterfly's position before and after the
-	 *  flySafe has been executed, allows us to detect obstacles without incurring the overhead of a trace
-	 *  arising from using a try-catch block. This provides a significant speed enhancement
+	 *  From the tile the butterfly is on, the unknown neighbor with the fewest unknown neighbors of its
+	 *  own is probed first, so the explored region stays compact and leaves no pockets behind that we
+	 *  would have to come back to. When no neighbor is unknown, a breadth-first search over the open
+	 *  tiles finds the nearest one that has an unknown neighbor, and the butterfly flies straight
+	 *  there, instead of backtracking one tile at a time as a DFS would.
 	 *  
 	 *  @see danaus.flySafe
 	 */
-	private void dfs() {
-		// The actual bounds are r=[-1 1] but we subtract 1 throughout (and add it back in the loop) to exploit Java's faster checking for 0
-		for(int r=-2; r<=0; ++r) {
-			// The actual bounds are c=[-1 1] but we subtract 1 throughout (and add it back in the loop) to exploit Java's faster checking for 0
-			for(int c=-2; c<=0; ++c) {
-				// Initialize temporary variables for easy calculation
-				row = state.location.row;
-				col = state.location.col;
-
-				// Initialize temporary variables for easy calculation
-				// The fancy math normalizes the coordinates from the contiguous map space to Cartesian space
-				// Without this normalization the DFS will fail at edge cases of the map
-				final int curRow = (row+r+1+height)%height;
-				final int curCol = (col+c+1+width)%width;
-
-				// Only fly to tiles which have not been visited (i.e. they are not in the visited array)
-				if (!v[curRow][curCol]) {
-
-					// Fly in the specified, de-enumerated direction
-					// Here we intentionally use flySafe to avoid the speed penalty of a try-catch block
-					flySafe(dir(r+1,c+1),s);
-
-					// Update the state variable with information about the current tile
-					refreshState();
-
-					// Store the flower set to a variable to avoid unnecessary cycles
-					List<Flower> flowerSet = state.getFlowers();
-
-					for(Flower f : flowerSet) {
-						// Insert the location of the flower into the hash-map
-						flowerLoc.put(f,state.location);
-					}
+	private void explore() {
+		// The tiles that still have an unknown neighbor
+		final GridSearch.Goal frontier = new GridSearch.Goal() {
+			public @Override boolean reached(int tile) {
+				return unknown[tile] > 0;
+			}
+		};
+
+		int here = grid.tile(state.location.row, state.location.col);
+		while (true) {
+			final Direction d = nextProbe(here);
+
+			// Nothing is left to probe here, so fly to the nearest tile that has something left
+			if (d == null) {
+				final List<Direction> route = search.nearest(here, frontier);
+				if (route == null) break;
+				for (Direction step : route) {
+					fly(step,s);
+					here = grid.neighbor(here, step);
+				}
+				continue;
+			}
 
-					// Set the location as visited
-					v[curRow][curCol] = true;
+			// Here we intentionally use flySafe to avoid the speed penalty of a try-catch block
+			final int next = grid.neighbor(here, d);
+			flySafe(d,s);
+			know(next);
 
-					// If the butterfly's coordinates remain unchanged even after flying, we're in front of an obstacle
-					if (!(state.location.row==row && state.location.col==col)) {                                                    
-						// Write the state of the current tile to the correct position in the results array
-						result[curRow][curCol] = state;
+			// If the butterfly's coordinates remain unchanged even after flying, we're in front of an obstacle
+			if (getLocation().row == grid.row(here) && getLocation().col == grid.col(here)) {
+				obstacles.set(next);
+				continue;
+			}
+			here = next;
 
-						// Push the direction that was flown onto the stack
-						dfsStack.push(dir(r+1,c+1));
+			// Update the state variable with information about the current tile
+			refreshState();
 
-						// Call the algorithm again to traverse the stack from the top once more
-						dfs();
-					}
-				}
+			for(Flower f : state.getFlowers()) {
+				// Insert the location of the flower into the hash-map
+				flowerLoc.put(f,state.location);
 			}
+
+			// Write the state of the current tile to the correct position in the results array
+			result[state.location.row][state.location.col] = state;
+			grid.learn(here, state);
 		}
 
-		// Base Case: Algorithm is complete when there are no more tiles to visit
-		// i.e. there are no more tiles on the stack
-		if(dfsStack.isEmpty()) return;
+		// Leave the state describing the tile the butterfly ended on, which the run phase starts from
+		if (state.location.row != grid.row(here) || state.location.col != grid.col(here)) refreshState();
+	}
 
-		// If there's nowhere else to go, backtrack to the previous visited location
-		fly(Direction.opposite(dfsStack.pop()),s);
+	/** An instance returns the direction of the unknown neighbor of tile with the fewest unknown
+	 *  neighbors of its own, or null if no neighbor of tile is unknown */
+	private Direction nextProbe(int tile) {
+		if (unknown[tile] == 0) return null;
 
-		// Update the state variable with information about the current tile
-		refreshState();
+		int best = -1;
+		for (int d = 0; d < Directions.COUNT; ++d) {
+			final int n = grid.neighbor(tile, d);
+			if (!visited.get(n) && (best < 0 || unknown[n] < unknown[grid.neighbor(tile, best)])) best = d;
+		}
+		return Directions.get(best);
 	}
 
 	/** An instance runs an assisted DFS to collect flowers on the map.
@@ -148,67 +198,288 @@ public class Butterfly extends AbstractButterfly {
 	 *  The algorithm goes through the map using normal DFS behavior, but performs an additional check
 	 *  for obstacles using information derived from the learn phase. This prevents it from flying into an
 	 *  obstacle and throwing an exception. At every legal tile, we check for flowers and collect them if
-	 *  they are on the list provided as input. The DFS terminates when all flowers have been collected.
+	 *  they are on the list provided as input. The DFS terminates as soon as all flowers have been collected.
 	 *  
-	 *  Precondition: The learn phase has been executed and a map array of obstacles is available
+	 *  Precondition: The learn phase has been executed and a set of obstacles is available
 	 *  
 	 *  @param flowerIdMap A hash-set of flower IDs that represent flowers to be collected by the butterfly. 
 	 */
-	private void dfsCollect(Set<Long>flowerIdMap) {
-		// The actual bounds are r=[-1 1] but we subtract 1 throughout (and add it back in the loop) to exploit Java's faster checking for 0
-		for(int r=-2; r<=0; ++r) {
-			// The actual bounds are c=[-1 1] but we subtract 1 throughout (and add it back in the loop) to exploit Java's faster checking for 0
-			for(int c=-2; c<=0; ++c) {
-				// Initialize temporary variables for easy calculation
-				// The fancy math normalizes the coordinates from the contiguous map space to Cartesian space
-				// Without this normalization the DFS will fail at edge cases of the map
-				final int curRow = (state.location.row+r+1+height)%height;
-				final int curCol = (state.location.col+c+1+width)%width;
-
-				// Only consider tiles which have not been visited (i.e. they are not in the visited array)
-				if (!vRun[curRow][curCol]) {
-					// If it's an obstacle, only set the location as visited and nothing else
-					vRun[curRow][curCol] = true;
-
-					// Lookup the map from the learn phase to check if the tile we're trying to fly to is an obstacle
-					if (result[curRow][curCol]!=null) {
-						// Fly in the specified, de-enumerated direction
-						// Unlike in the learn phase we do not need flySafe here because we know where the obstacles are
-						fly(dir(r+1,c+1),s);
-
-						// Update the state variable with information about the current tile
-						refreshState();
-
-						// Store the flower set to a variable to avoid unnecessary cycles
-						List<Flower> flowerSet = state.getFlowers();
-
-						// Collect the flowers on the tile that match those in the list
-						for (Flower f : flowerSet) {
-							if(flowerIdMap.remove(f.getFlowerId())) { collect(f); }
-						}
+	private void dfsCollect(Set<Long> flowerIdMap) {
+		depth = 0;
+		push(null);
 
-						// Set the location as visited
-						vRun[curRow][curCol] = true;
+		while (depth > 0 && !flowerIdMap.isEmpty()) {
+			final int top = depth-1;
 
-						// Push the direction that was flown onto the stack
-						dfsCollectStack.push(dir(r+1,c+1));
+			// Every neighbor has been tried, so backtrack to the previous visited location
+			if (stackNext[top] == NEIGHBORS) {
+				depth--;
+				if (stackEntry[top] == null) return;
 
-						// Call the algorithm again to traverse the stack from the top once more
-						dfsCollect(flowerIdMap);
-					}
+				fly(Direction.opposite(stackEntry[top]),s);
+
+				// Update the state variable with information about the current tile
+				refreshState();
+				continue;
+			}
+
+			// Translate the neighbor index into offsets r,c={-1,0,1}
+			final int k = stackNext[top]++;
+			final int r = k/3-1;
+			final int c = k%3-1;
+			final int cur = grid.tile(state.location.row+r, state.location.col+c);
+
+			// Only consider tiles which have not been visited (i.e. they are not in the visited set)
+			if (visitedRun.get(cur)) continue;
+
+			// Set the location as visited
+			visitedRun.set(cur);
+
+			// Lookup the obstacles from the learn phase to check if the tile we're trying to fly to is flyable
+			// Unlike in the learn phase we do not need flySafe here because we know where the obstacles are
+			if (obstacles.get(cur) || !visited.get(cur)) continue;
+
+			// Fly in the specified, de-enumerated direction
+			fly(Directions.of(r,c),s);
+
+			// Update the state variable with information about the current tile
+			refreshState();
+
+			// Collect the flowers on the tile that match those in the list
+			for (Flower f : state.getFlowers()) {
+				if(flowerIdMap.remove(f.getFlowerId())) { collect(f); }
+			}
+
+			// Push the direction that was flown onto the stack to traverse from the new tile
+			push(Directions.of(r,c));
+		}
+	}
+
+	/** An instance flies the shortest tour through the known locations of the required flowers.
+	 * 
+	 *  The tiles of every required flower seen during the learn phase are the stops of the tour.
+	 *  The distance matrix built at the end of the learn phase gives the cost of flying between any
+	 *  two of them, so no searching is left for the run phase. The stops are ordered by a
+	 *  nearest-neighbour heuristic, improved by 2-opt. The butterfly flies each leg along the
+	 *  matrix's next hops, and required flowers on any tile passed along the way are collected too.
+	 *  A stop is skipped if its flowers have already been collected.
+	 *  
+	 *  Flowers planted after the learn phase have no learned location. The tiles they were located on
+	 *  by their aromas are stops too, and the butterfly refreshes at them to collect what it finds.
+	 *  Flowers that could not be located are left in the set for the assisted DFS to find.
+	 *  
+	 *  Precondition: The learn phase has been executed and the results array is available
+	 *  
+	 *  @param flowerIdMap A hash-set of flower IDs that represent flowers to be collected by the butterfly. 
+	 *  @param located The tiles flowers planted after the learn phase may be on, as returned by locate.
+	 */
+	private void collectTour(Set<Long> flowerIdMap, Map<Integer,Set<Long>> located) {
+		// Group the IDs of the known required flowers by the tile they are on, starting from the
+		// flowers located by their aromas, and keep the learned flowers to collect them by
+		final Map<Integer,Set<Long>> stopFlowers = new HashMap<Integer,Set<Long>>(located);
+		final Map<Long,Flower> learned = new HashMap<Long,Flower>();
+		for (Map.Entry<Flower,Location> e : flowerLoc.entrySet()) {
+			final long id = e.getKey().getFlowerId();
+			if (!flowerIdMap.contains(id)) continue;
+
+			learned.put(id, e.getKey());
+			final int tile = grid.tile(e.getValue().row, e.getValue().col);
+			Set<Long> ids = stopFlowers.get(tile);
+			if (ids == null) {
+				ids = new HashSet<Long>();
+				stopFlowers.put(tile, ids);
+			}
+			ids.add(id);
+		}
+		if (stopFlowers.isEmpty()) return;
+
+		// Node 0 is the butterfly's tile and nodes 1..k are the stops
+		final int k = stopFlowers.size();
+		final int[] nodes = new int[k+1];
+		nodes[0] = grid.tile(state.location.row, state.location.col);
+		int n = 1;
+		for (int tile : stopFlowers.keySet()) nodes[n++] = tile;
+
+		// Look up the cost of every leg in the matrix built while learning. The legs one way and the
+		// other differ by the slow down of their ends, so the tour is ordered by their sum, which is
+		// the same both ways
+		final int[] index = new int[k+1];
+		for (int i = 0; i <= k; ++i) index[i] = distances.node(nodes[i]);
+		final int[][] d = new int[k+1][k+1];
+		for (int i = 0; i <= k; ++i) {
+			for (int j = 0; j <= k; ++j) {
+				final int there = distances.cost(index[i], index[j]);
+				final int back = distances.cost(index[j], index[i]);
+				d[i][j] = there < 0 || back < 0 ? -1 : there+back;
+			}
+		}
+
+		// Order the stops, then fly each leg of the tour at full speed along the matrix's next hops.
+		// Refreshing is free with infinite energy, so we refresh after every move and collect the
+		// required flowers on every tile we pass
+		final int[] tour = twoOpt(nearestNeighbour(d), d);
+		int at = nodes[0];
+		for (int t = 1; t < tour.length; ++t) {
+			final int stop = tour[t];
+
+			// Skip stops that cannot be reached or whose flowers were collected on the way
+			if (d[0][stop] < 0 || !containsAny(flowerIdMap, stopFlowers.get(nodes[stop]))) continue;
+
+			for (Direction step : distances.path(at, index[stop])) {
+				fly(step,s);
+
+				// Update the state variable and collect the flowers on the tile that match those in the list
+				refreshState();
+				for (Flower f : state.getFlowers()) {
+					if(flowerIdMap.remove(f.getFlowerId())) { collect(f); }
+				}
+				if (flowerIdMap.isEmpty()) return;
+			}
+
+			// Collect the flowers we learned at the stop that are still required
+			// Flowers are equal iff their IDs are, so the learned flowers can be collected without a refresh
+			// Located flowers were never seen, so we have to refresh to collect them
+			at = nodes[stop];
+			boolean unseen = false;
+			for (long id : stopFlowers.get(at)) {
+				if (!flowerIdMap.contains(id)) continue;
+				if (learned.containsKey(id)) { flowerIdMap.remove(id); collect(learned.get(id)); }
+				else unseen = true;
+			}
+			if (unseen) {
+				refreshState();
+				for (Flower f : state.getFlowers()) {
+					if(flowerIdMap.remove(f.getFlowerId())) { collect(f); }
 				}
 			}
+			if (flowerIdMap.isEmpty()) return;
 		}
+	}
 
-		// Base Case: Algorithm is complete when there are no more tiles to visit
-		// i.e. there are no more tiles on the stack
-		if(flowerIdMap.isEmpty()) return;
+	/** An instance locates the required flowers we have never seen from their aromas.
+	 * 
+	 *  The aromas on the butterfly's tile give every unseen flower's distance, which narrows down the
+	 *  tiles it can be on. While some flower could still be on more than one tile, the butterfly
+	 *  flies to the tile picked by the locator and smells again. This takes tens of moves rather than
+	 *  a sweep of the map. Required flowers on the tiles flown over are collected on the way.
+	 *  
+	 *  @param flowerIdMap A hash-set of flower IDs that represent flowers to be collected by the butterfly.
+	 *  @return The tiles every unseen flower may be on, each mapped to the IDs of the flowers that may
+	 *  be there. A flower that could still be on too many tiles is left out, for the assisted DFS
+	 */
+	private Map<Integer,Set<Long>> locate(Set<Long> flowerIdMap) {
+		final Map<Integer,Set<Long>> located = new HashMap<Integer,Set<Long>>();
+
+		// The flowers we have to locate are the required ones we did not see while learning
+		final Set<Long> unseen = new HashSet<Long>(flowerIdMap);
+		for (Flower f : flowerLoc.keySet()) unseen.remove(f.getFlowerId());
+		if (unseen.isEmpty()) return located;
+
+		final AromaLocator locator = new AromaLocator(grid, unseen, flowerLoc.keySet());
+		locator.sample(grid.tile(state.location.row, state.location.col), state.getAromas());
+
+		int moves = 0;
+		while (moves < MAX_PROBE_MOVES && locator.unresolved()) {
+			// Find the next tile to smell at
+			final int here = grid.tile(state.location.row, state.location.col);
+			final int target = locator.probe(here);
+			if (target < 0) break;
+
+			// Fly there, collecting the required flowers on every tile, and smell
+			for (Direction step : locator.path(here, target)) {
+				fly(step,s);
+				moves++;
+
+				// Update the state variable and collect the flowers on the tile that match those in the list
+				refreshState();
+				for (Flower f : state.getFlowers()) {
+					if(flowerIdMap.remove(f.getFlowerId())) { collect(f); locator.forget(f.getFlowerId()); }
+				}
+			}
+			locator.sample(target, state.getAromas());
+		}
 
-		// If there's nowhere else to go, backtrack to the previous visited location
-		fly(Direction.opposite(dfsCollectStack.pop()),s);
+		// Every remaining flower with few enough candidate tiles becomes a stop on each of them
+		for (Map.Entry<Long,int[]> e : locator.candidates().entrySet()) {
+			if (!flowerIdMap.contains(e.getKey()) || e.getValue().length > MAX_CANDIDATES) continue;
+			for (int tile : e.getValue()) {
+				Set<Long> ids = located.get(tile);
+				if (ids == null) {
+					ids = new HashSet<Long>();
+					located.put(tile, ids);
+				}
+				ids.add(e.getKey());
+			}
+		}
+		return located;
+	}
 
-		// Update the state variable with information about the current tile
-		refreshState();
+	/** An instance returns true iff set contains any of ids */
+	private static boolean containsAny(Set<Long> set, Set<Long> ids) {
+		for (long id : ids) {
+			if (set.contains(id)) return true;
+		}
+		return false;
+	}
+
+	/** An instance orders the nodes of a tour starting at node 0 by always visiting the nearest
+	 *  unvisited node next. Unreachable nodes are visited last.
+	 *  
+	 *  @param d The cost of the leg between every pair of nodes, or -1 if unreachable.
+	 */
+	private static int[] nearestNeighbour(int[][] d) {
+		final int n = d.length;
+		final int[] tour = new int[n];
+		final boolean[] done = new boolean[n];
+		done[0] = true;
+		for (int t = 1; t < n; ++t) {
+			final int from = tour[t-1];
+			int best = -1;
+			for (int j = 1; j < n; ++j) {
+				if (done[j]) continue;
+				if (best < 0 || cost(d[from][j]) < cost(d[from][best])) best = j;
+			}
+			tour[t] = best;
+			done[best] = true;
+		}
+		return tour;
+	}
+
+	/** An instance improves a tour starting at node 0 by reversing any segment of it that shortens
+	 *  the tour, until no reversal does. The tour is open: it need not return to node 0.
+	 *  
+	 *  @param d The cost of the leg between every pair of nodes, or -1 if unreachable.
+	 */
+	private static int[] twoOpt(int[] tour, int[][] d) {
+		final int n = tour.length;
+		boolean improved = true;
+		while (improved) {
+			improved = false;
+			for (int i = 1; i < n-1; ++i) {
+				for (int j = i+1; j < n; ++j) {
+					final int a = tour[i-1], b = tour[i], c = tour[j];
+					long delta = cost(d[a][c]) - cost(d[a][b]);
+					if (j+1 < n) {
+						final int e = tour[j+1];
+						delta += cost(d[b][e]) - cost(d[c][e]);
+					}
+					if (delta < 0) {
+						for (int x = i, y = j; x < y; ++x, --y) {
+							final int tmp = tour[x];
+							tour[x] = tour[y];
+							tour[y] = tmp;
+						}
+						improved = true;
+					}
+				}
+			}
+		}
+		return tour;
+	}
+
+	/** An instance returns the cost of a leg, treating unreachable legs as very long */
+	private static long cost(int d) {
+		return d < 0 ? Integer.MAX_VALUE : d;
 	}
 
 	/**
@@ -255,25 +526,31 @@ public class Butterfly extends AbstractButterfly {
 	 * butterfly is on.
 	 */
 	public @Override TileState[][] learn() {
-		// Get the map's height and width
+		// Get the map's height and width, and size the search state to match
 		height = getMapHeight();
 		width = getMapWidth();
+		allocate();
 
 		// Record the information for the starting tile
 		refreshState();
 
-		// Get the world coordinates of the butterfly's current position
-		row = state.location.row;
-		col = state.location.col;
-
 		// Write the state of the current tile to the correct position in the results array
-		result[row][col] = state;
+		result[state.location.row][state.location.col] = state;
+		grid.learn(grid.tile(state.location.row, state.location.col), state);
 
 		// Mark the starting tile as visited
-		v[row][col] = true;
+		know(grid.tile(state.location.row, state.location.col));
+
+		// Explore the map, flying to the nearest unknown tile whenever there is nothing left to probe
+		explore();
 
-		// Call a depth-first-search to traverse the map
-		dfs();
+		// Build the distance matrix between the flowers we found and where the run phase starts,
+		// searching from each of them in parallel, so the run phase can start flying at once
+		final int[] nodes = new int[flowerLoc.size()+1];
+		nodes[0] = grid.tile(state.location.row, state.location.col);
+		int n = 1;
+		for (Location l : flowerLoc.values()) nodes[n++] = grid.tile(l.row, l.col);
+		distances = new DistanceMatrix(grid, nodes, RUNNING_FLOWERS);
 
 		return result;
 	}
@@ -305,10 +582,14 @@ public class Butterfly extends AbstractButterfly {
 			if(flowerIdMap.remove(f.getFlowerId())) { collect(f); }
 		}
 
-		// Mark the starting tile as visited
-		vRun[state.location.row][state.location.col] = true;
+		// Locate the required flowers planted after learning by their aromas, then fly a planned
+		// tour through them and the flowers whose locations were learned
+		if (!flowerIdMap.isEmpty()) collectTour(flowerIdMap, locate(flowerIdMap));
 
-		// Call a depth-first-search to traverse the map and collect the flowers
+		// Sweep the map with a depth-first-search to collect any flowers planted after learning
+		if (flowerIdMap.isEmpty()) return;
+		refreshState();
+		visitedRun.set(grid.tile(state.location.row, state.location.col));
 		dfsCollect(flowerIdMap);
 	}
 
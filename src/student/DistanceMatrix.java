@@ -0,0 +1,266 @@
+package student;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import danaus.*;
+import student.nav.Directions;
+import student.nav.TorusGrid;
+
+/** An instance holds the cost of the cheapest route between every pair of a set of nodes of a
+ *  learned map, and for every node a next-hop table giving, from any tile, the direction of the
+ *  first move of the cheapest route to that node.
+ *
+ *  A route is flown at full speed, so its cost is measured in adjusted turns: flying onto a tile
+ *  takes a turn and adds the tile's slow down plus the speed's slow down. An adjusted turn weighs
+ *  ADJUSTED_WEIGHT and every move one more, so of two routes with equal adjusted turns the one
+ *  with fewer moves is cheaper. Each node's table is filled by one search backwards from the node:
+ *  a breadth-first search over the wrap-around, 8-connected map, weighted by the slow down of the
+ *  tiles entered, so it runs as Dijkstra's algorithm.
+ *
+ *  The searches of the nodes known when the matrix is built are independent, so they run in
+ *  parallel on every core. Nodes can be added later, such as the tiles of flowers planted after the
+ *  learn phase; their searches run on the caller's thread and the matrix grows to fit them.
+ *
+ *  Tiles never learned (null in the map) and obstacles are never entered.
+ */
+class DistanceMatrix {
+	/** The weight of an adjusted turn relative to a move */
+	private static final int ADJUSTED_WEIGHT = 1 << 10;
+
+	/** The next-hop entry of tiles that cannot reach a node, and of the node itself */
+	private static final byte NONE = -1;
+
+	/** The learned map */
+	private final TorusGrid grid;
+
+	/** The distinct costs of flying onto a tile, and the index into steps of the cost of every tile,
+	 *  or -1 if the tile is never entered. Computed once and shared by every search */
+	private final int[] steps;
+	private final int[] stepOf;
+
+	/** The tile of every node, and the node of every tile that is one */
+	private int[] nodes;
+	private final Map<Integer,Integer> index = new HashMap<Integer,Integer>();
+	private int size;
+
+	/** The matrix of costs, row-major with capacity columns: costs[i*capacity+j] is the cost of the
+	 *  cheapest route from node i to node j, or -1 if there is none */
+	private int[] costs;
+	private int capacity;
+
+	/** The next-hop table of every node: hops[j][tile] is the ordinal of the direction of the first
+	 *  move from tile towards node j, or NONE */
+	private byte[][] hops;
+
+	/** An instance builds the matrix of nodes of a learned map, searching from every node in
+	 *  parallel.
+	 *
+	 *  @param grid The learned map.
+	 *  @param nodes The bits row*width+col of the tiles of the nodes; duplicates are ignored.
+	 *  @param extra The number of nodes expected to be added later, for which room is left.
+	 */
+	DistanceMatrix(TorusGrid grid, int[] nodes, int extra) {
+		this.grid = grid;
+
+		final ArrayList<Integer> distinct = new ArrayList<Integer>();
+		stepOf = new int[grid.size()];
+		for (int tile = 0; tile < grid.size(); ++tile) {
+			if (!grid.open(tile)) {
+				stepOf[tile] = -1;
+			}
+			else {
+				final int step = step(grid.state(tile));
+				if (!distinct.contains(step)) distinct.add(step);
+				stepOf[tile] = distinct.indexOf(step);
+			}
+		}
+		steps = new int[Math.max(distinct.size(), 1)];
+		for (int k = 0; k < distinct.size(); ++k) steps[k] = distinct.get(k);
+
+		for (int tile : nodes) {
+			if (!index.containsKey(tile)) index.put(tile, size++);
+		}
+		this.nodes = new int[size+extra];
+		for (Map.Entry<Integer,Integer> e : index.entrySet()) this.nodes[e.getValue()] = e.getKey();
+		this.capacity = size+extra;
+		this.costs = new int[capacity*capacity];
+		this.hops = new byte[capacity][];
+
+		searchAll();
+	}
+
+	/** An instance returns the number of nodes */
+	int size() {
+		return size;
+	}
+
+	/** An instance returns the tile of node i */
+	int tile(int i) {
+		return nodes[i];
+	}
+
+	/** An instance returns the node of tile, adding it to the matrix if it is not one yet */
+	int node(int tile) {
+		final Integer i = index.get(tile);
+		if (i != null) return i;
+
+		if (size == capacity) grow();
+		final int j = size++;
+		nodes[j] = tile;
+		index.put(tile, j);
+
+		// The new node's row is the cost from it to every other node, which the other nodes'
+		// tables already hold; its column needs a search of its own
+		search(j, new Search());
+		for (int k = 0; k < size; ++k) costs[j*capacity+k] = follow(tile, k);
+		return j;
+	}
+
+	/** An instance returns the cost of the cheapest route from node i to node j, or -1 if there is
+	 *  none */
+	int cost(int i, int j) {
+		return costs[i*capacity+j];
+	}
+
+	/** An instance returns the directions of the cheapest route from tile to node j, or null if
+	 *  there is none */
+	List<Direction> path(int tile, int j) {
+		final ArrayList<Direction> steps = new ArrayList<Direction>();
+		final byte[] hop = hops[j];
+		while (tile != nodes[j]) {
+			if (hop[tile] == NONE) return null;
+			steps.add(Directions.get(hop[tile]));
+			tile = grid.neighbor(tile, hop[tile]);
+		}
+		return steps;
+	}
+
+	/** An instance returns the cost of the cheapest route from tile to node j, following its
+	 *  next-hop table, or -1 if there is none */
+	private int follow(int tile, int j) {
+		int cost = 0;
+		final byte[] hop = hops[j];
+		while (tile != nodes[j]) {
+			if (hop[tile] == NONE) return -1;
+			tile = grid.neighbor(tile, hop[tile]);
+			cost += step(grid.state(tile));
+		}
+		return cost;
+	}
+
+	/** An instance doubles the room for nodes, keeping every cost and table */
+	private void grow() {
+		final int grown = Math.max(1, capacity*2);
+		final int[] grownCosts = new int[grown*grown];
+		for (int i = 0; i < size; ++i) System.arraycopy(costs, i*capacity, grownCosts, i*grown, size);
+		costs = grownCosts;
+		nodes = Arrays.copyOf(nodes, grown);
+		hops = Arrays.copyOf(hops, grown);
+		capacity = grown;
+	}
+
+	/** An instance runs the search of every node, spreading the nodes over a thread per core.
+	 *  Each search writes only its own node's table and column, so the threads share nothing but the
+	 *  counter handing out nodes */
+	private void searchAll() {
+		final AtomicInteger next = new AtomicInteger();
+		final Runnable worker = new Runnable() {
+			public @Override void run() {
+				final Search buffers = new Search();
+				for (int j = next.getAndIncrement(); j < size; j = next.getAndIncrement()) {
+					search(j, buffers);
+				}
+			}
+		};
+
+		final int threads = Math.min(Runtime.getRuntime().availableProcessors(), size);
+		final Thread[] pool = new Thread[Math.max(threads-1, 0)];
+		for (int t = 0; t < pool.length; ++t) {
+			pool[t] = new Thread(worker, "distance-matrix-" + t);
+			pool[t].start();
+		}
+
+		// The calling thread searches too, rather than idling until the pool finishes
+		worker.run();
+		for (Thread thread : pool) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while building the distance matrix", e);
+			}
+		}
+	}
+
+	/** The buffers of a search, reused by every search run on the same thread. There is one FIFO
+	 *  queue per step cost, holding tiles and the costs they were queued with */
+	private final class Search {
+		final int[] dist = new int[grid.size()];
+		final int[][] queue = new int[steps.length][grid.size()];
+		final int[][] queued = new int[steps.length][grid.size()];
+		final int[] head = new int[steps.length];
+		final int[] tail = new int[steps.length];
+	}
+
+	/** An instance searches backwards from node j, filling its next-hop table and its column of
+	 *  the matrix.
+	 *
+	 *  The search runs from the node outwards, so the cost of the move from a tile a onto a tile b
+	 *  is charged when b is taken and a is reached from it, and a is queued on the queue of b's step
+	 *  cost. Tiles are taken in order of cost, so every queue only ever grows in cost and the
+	 *  cheapest tile not yet taken is at the head of one of them. This is Dijkstra's algorithm
+	 *  without a heap, as cheap as a BFS. A tile queued again at a lower cost leaves a stale entry
+	 *  behind, which is skipped when it is reached.
+	 */
+	private void search(int j, Search s) {
+		final int[] dist = s.dist;
+		Arrays.fill(dist, -1);
+		final byte[] hop = new byte[grid.size()];
+		Arrays.fill(hop, NONE);
+		Arrays.fill(s.head, 0);
+		Arrays.fill(s.tail, 0);
+
+		final int source = nodes[j];
+		dist[source] = 0;
+		s.queue[0][0] = source;
+		s.queued[0][0] = 0;
+		s.tail[0] = 1;
+		while (true) {
+			// Take the cheapest tile at the head of a queue
+			int q = -1;
+			for (int k = 0; k < steps.length; ++k) {
+				if (s.head[k] < s.tail[k] && (q < 0 || s.queued[k][s.head[k]] < s.queued[q][s.head[q]])) q = k;
+			}
+			if (q < 0) break;
+			final int b = s.queue[q][s.head[q]];
+			final int db = s.queued[q][s.head[q]++];
+			if (db != dist[b]) continue;
+
+			final int w = stepOf[b];
+			final int da = db + steps[w];
+			for (int d = 0; d < Directions.COUNT; ++d) {
+				final int a = grid.neighbor(b, d);
+				if (stepOf[a] < 0 || (dist[a] >= 0 && dist[a] <= da)) continue;
+
+				// The first move from a towards the node is the opposite of the direction searched
+				dist[a] = da;
+				hop[a] = (byte) Directions.opposite(d);
+				s.queue[w][s.tail[w]] = a;
+				s.queued[w][s.tail[w]++] = da;
+			}
+		}
+
+		hops[j] = hop;
+		for (int i = 0; i < size; ++i) costs[i*capacity+j] = dist[nodes[i]];
+	}
+
+	/** An instance returns the cost of flying onto tile t at full speed */
+	private static int step(TileState t) {
+		return (1 + t.type.slowDown + Speed.FAST.slowDownNumber)*ADJUSTED_WEIGHT + 1;
+	}
+}
@@ -0,0 +1,43 @@
+package student.nav;
+
+import danaus.Direction;
+
+/** Lookup tables for the 8 directions, so no search converts between offsets, ordinals and
+ *  opposites with if-chains or clones Direction.values() on every expansion.
+ */
+public final class Directions {
+	/** The number of directions, and so of neighbors of every tile */
+	public static final int COUNT = 8;
+
+	/** The directions in ordinal order */
+	private static final Direction[] VALUES = Direction.values();
+
+	/** The direction of every offset (dRow, dCol) at index (dRow+1)*3 + dCol+1, null for (0, 0), and
+	 *  the ordinal of the opposite of every direction */
+	private static final Direction[] OFFSETS = new Direction[9];
+	private static final int[] OPPOSITE = new int[VALUES.length];
+	static {
+		for (Direction d : VALUES) {
+			OFFSETS[(d.dRow+1)*3 + d.dCol+1] = d;
+			OPPOSITE[d.ordinal()] = Direction.opposite(d).ordinal();
+		}
+	}
+
+	private Directions() {}
+
+	/** Returns the direction of ordinal d */
+	public static Direction get(int d) {
+		return VALUES[d];
+	}
+
+	/** Returns the direction of the offset (dRow, dCol), each of them -1, 0 or 1, or null for
+	 *  (0, 0) */
+	public static Direction of(int dRow, int dCol) {
+		return OFFSETS[(dRow+1)*3 + dCol+1];
+	}
+
+	/** Returns the ordinal of the opposite of the direction of ordinal d */
+	public static int opposite(int d) {
+		return OPPOSITE[d];
+	}
+}
@@ -0,0 +1,109 @@
+package student.nav;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import danaus.Direction;
+
+/** An instance runs breadth-first searches over the open tiles of a TorusGrid, counting moves.
+ *  Routes weighed by their adjusted turns are found by the DistanceMatrix of the student package.
+ *
+ *  The work buffers are allocated once and reused by every search; a stamp marks which entries
+ *  belong to the current search so they never need to be cleared.
+ *
+ *  An instance is not thread-safe; every thread searching the same grid needs its own.
+ */
+public final class GridSearch {
+	/** A goal of a search for the nearest tile satisfying it */
+	public interface Goal {
+		/** Returns true iff tile satisfies the goal */
+		boolean reached(int tile);
+	}
+
+	/** The grid searched */
+	private final TorusGrid grid;
+
+	/** The work buffers, indexed by tile. An entry is only valid if its stamp is the current
+	 *  search's. via holds the ordinal of the direction of the move that reached the tile */
+	private final byte[] via;
+	private final int[] stamp;
+	private int search;
+
+	/** The queue of the breadth-first searches */
+	private final int[] queue;
+
+	/** An instance creates a search of grid */
+	public GridSearch(TorusGrid grid) {
+		this.grid = grid;
+
+		via = new byte[grid.size()];
+		stamp = new int[grid.size()];
+		queue = new int[grid.size()];
+	}
+
+	/** An instance returns the number of moves from tile source to every tile over the open tiles,
+	 *  or -1 where unreachable, in a new array the caller may keep */
+	public int[] bfs(int source) {
+		final int[] dist = new int[grid.size()];
+		Arrays.fill(dist, -1);
+		int head = 0, tail = 0;
+		dist[source] = 0;
+		queue[tail++] = source;
+		while (head < tail) {
+			final int t = queue[head++];
+			for (int d = 0; d < Directions.COUNT; ++d) {
+				final int next = grid.neighbor(t, d);
+				if (dist[next] >= 0 || !grid.open(next)) continue;
+
+				dist[next] = dist[t]+1;
+				queue[tail++] = next;
+			}
+		}
+		return dist;
+	}
+
+	/** An instance returns the directions of the route of fewest moves over open tiles from tile
+	 *  from to the nearest tile satisfying goal, which may be from itself, or null if none can be
+	 *  reached */
+	public List<Direction> nearest(int from, Goal goal) {
+		begin();
+		int head = 0, tail = 0;
+		stamp[from] = search;
+		queue[tail++] = from;
+		while (head < tail) {
+			final int t = queue[head++];
+			if (goal.reached(t)) return route(from, t);
+
+			for (int d = 0; d < Directions.COUNT; ++d) {
+				final int next = grid.neighbor(t, d);
+				if (stamp[next] == search || !grid.open(next)) continue;
+
+				stamp[next] = search;
+				via[next] = (byte) d;
+				queue[tail++] = next;
+			}
+		}
+		return null;
+	}
+
+	/** An instance starts a new search, invalidating every entry of the work buffers */
+	private void begin() {
+		if (++search == 0) {
+			// The stamps wrapped around, so old entries could look current
+			Arrays.fill(stamp, 0);
+			search = 1;
+		}
+	}
+
+	/** An instance rebuilds the route from tile from to tile to by following the moves back */
+	private List<Direction> route(int from, int to) {
+		final ArrayList<Direction> route = new ArrayList<Direction>();
+		for (int t = to; t != from; t = grid.neighbor(t, Directions.opposite(via[t]))) {
+			route.add(Directions.get(via[t]));
+		}
+		Collections.reverse(route);
+		return route;
+	}
+}
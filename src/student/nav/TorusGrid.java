@@ -0,0 +1,97 @@
+package student.nav;
+
+import danaus.Direction;
+import danaus.TileState;
+
+/** An instance is the graph of a wrap-around map of height by width tiles, as far as it has been
+ *  learned.
+ *
+ *  Tile [row,col] is node row*width+col, and every node has an edge to each of its 8 neighbors,
+ *  wrapping around the edges of the map. The edges are implicit: a neighbor is the node plus the
+ *  offset of its direction, moved back onto the map if the move wraps around an edge, so the graph
+ *  takes no memory beyond the state of each tile. A tile is open once its state is learned and its
+ *  type is flyable; tiles never learned and obstacles are never entered.
+ */
+public final class TorusGrid {
+	/** The size of the map */
+	public final int height, width;
+
+	/** The offset from a node to its neighbor in the direction of every ordinal, before wrapping,
+	 *  and the column offset of that direction */
+	private final int[] offsets = new int[Directions.COUNT];
+	private final int[] dCols = new int[Directions.COUNT];
+
+	/** The learned state of every tile, or null, and whether it can be flown onto */
+	private final TileState[] states;
+	private final boolean[] open;
+
+	/** An instance creates the grid of a map of height by width tiles, none of them learned yet */
+	public TorusGrid(int height, int width) {
+		this.height = height;
+		this.width = width;
+		this.states = new TileState[height*width];
+		this.open = new boolean[height*width];
+
+		for (int d = 0; d < Directions.COUNT; ++d) {
+			final Direction dir = Directions.get(d);
+			offsets[d] = dir.dRow*width + dir.dCol;
+			dCols[d] = dir.dCol;
+		}
+	}
+
+	/** An instance returns the number of tiles */
+	public int size() {
+		return height*width;
+	}
+
+	/** An instance returns the node of tile [row,col], wrapping around the edges of the map */
+	public int tile(int row, int col) {
+		return ((row%height+height)%height)*width + (col%width+width)%width;
+	}
+
+	/** An instance returns the row of tile */
+	public int row(int tile) {
+		return tile/width;
+	}
+
+	/** An instance returns the column of tile */
+	public int col(int tile) {
+		return tile%width;
+	}
+
+	/** An instance returns the neighbor of tile in the direction of ordinal d */
+	public int neighbor(int tile, int d) {
+		int n = tile + offsets[d];
+
+		// A move off the left or right edge lands on the same row at the other edge
+		final int col = tile%width + dCols[d];
+		if (col < 0) n += width;
+		else if (col >= width) n -= width;
+
+		// A move off the top or bottom edge lands on the same column at the other edge
+		if (n < 0) n += height*width;
+		else if (n >= height*width) n -= height*width;
+		return n;
+	}
+
+	/** An instance returns the neighbor of tile in direction d */
+	public int neighbor(int tile, Direction d) {
+		return neighbor(tile, d.ordinal());
+	}
+
+	/** An instance records the learned state of tile; null forgets it */
+	public void learn(int tile, TileState state) {
+		states[tile] = state;
+		open[tile] = state != null && state.type.flyable;
+	}
+
+	/** An instance returns the learned state of tile, or null if it was never learned */
+	public TileState state(int tile) {
+		return states[tile];
+	}
+
+	/** An instance returns true iff tile has been learned and can be flown onto */
+	public boolean open(int tile) {
+		return open[tile];
+	}
+}